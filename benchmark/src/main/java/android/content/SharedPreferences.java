@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+/**
+ * Pure-JVM stand-in of the platform SharedPreferences, limited to the calls
+ * made by the benchmarked types
+ */
+public interface SharedPreferences {
+    interface Editor {
+        Editor putBoolean(String key, boolean value);
+
+        boolean commit();
+    }
+
+    boolean contains(String key);
+
+    boolean getBoolean(String key, boolean defValue);
+
+    Editor edit();
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pure-JVM stand-in of the platform Parcel, limited to the calls made by the
+ * benchmarked types. The layout follows the native Parcel: little endian,
+ * 4-byte aligned, bytes written as ints, strings as a length followed by the
+ * UTF-16 characters and a terminator, parcelables as their class name
+ * followed by their fields. dataSize() is therefore the binder payload size.
+ */
+public final class Parcel {
+    private static final ConcurrentHashMap<String, Parcelable.Creator<?>> sCreators =
+            new ConcurrentHashMap<String, Parcelable.Creator<?>>();
+
+    private byte[] mData = new byte[256];
+    private int mSize = 0;
+    private int mPos = 0;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mSize = 0;
+        mPos = 0;
+    }
+
+    public int dataSize() {
+        return mSize;
+    }
+
+    public int dataAvail() {
+        return (mPos < mSize) ? (mSize - mPos) : 0;
+    }
+
+    public int dataPosition() {
+        return mPos;
+    }
+
+    public void setDataPosition(int pos) {
+        mPos = pos;
+    }
+
+    /**
+     * Changes the amount of data in the parcel, keeping its buffer
+     */
+    public void setDataSize(int size) {
+        mSize = size;
+        if (mPos > size) {
+            mPos = size;
+        }
+    }
+
+    public void writeInt(int val) {
+        ensure(4);
+        byte[] d = mData;
+        int p = mPos;
+        d[p] = (byte) val;
+        d[p + 1] = (byte) (val >> 8);
+        d[p + 2] = (byte) (val >> 16);
+        d[p + 3] = (byte) (val >> 24);
+        advance(4);
+    }
+
+    public int readInt() {
+        if (mPos + 4 > mSize) {
+            return 0;
+        }
+        byte[] d = mData;
+        int p = mPos;
+        mPos += 4;
+        return (d[p] & 0xff) | ((d[p + 1] & 0xff) << 8) | ((d[p + 2] & 0xff) << 16)
+                | (d[p + 3] << 24);
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xffffffffL;
+        long high = readInt();
+        return (high << 32) | low;
+    }
+
+    public void writeFloat(float val) {
+        writeInt(Float.floatToRawIntBits(val));
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public void writeDouble(double val) {
+        writeLong(Double.doubleToRawLongBits(val));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public byte readByte() {
+        return (byte) readInt();
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        int bytes = (length + 1) * 2;
+        int padded = (bytes + 3) & ~3;
+        ensure(padded);
+        byte[] d = mData;
+        int p = mPos;
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            d[p++] = (byte) c;
+            d[p++] = (byte) (c >> 8);
+        }
+        for (int i = length * 2; i < padded; i++) {
+            d[p++] = 0;
+        }
+        advance(padded);
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        int padded = ((length + 1) * 2 + 3) & ~3;
+        if (mPos + padded > mSize) {
+            return null;
+        }
+        char[] chars = new char[length];
+        byte[] d = mData;
+        int p = mPos;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((d[p] & 0xff) | ((d[p + 1] & 0xff) << 8));
+            p += 2;
+        }
+        mPos += padded;
+        return new String(chars);
+    }
+
+    public void writeStringList(List<String> val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int n = val.size();
+        writeInt(n);
+        for (int i = 0; i < n; i++) {
+            writeString(val.get(i));
+        }
+    }
+
+    public ArrayList<String> createStringArrayList() {
+        int n = readInt();
+        if (n < 0) {
+            return null;
+        }
+        ArrayList<String> list = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(readString());
+        }
+        return list;
+    }
+
+    public void writeParcelable(Parcelable p, int flags) {
+        if (p == null) {
+            writeString(null);
+            return;
+        }
+        writeString(p.getClass().getName());
+        p.writeToParcel(this, flags);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+        String name = readString();
+        if (name == null) {
+            return null;
+        }
+        return (T) getCreator(name, loader).createFromParcel(this);
+    }
+
+    private static Parcelable.Creator<?> getCreator(String name, ClassLoader loader) {
+        Parcelable.Creator<?> creator = sCreators.get(name);
+        if (creator == null) {
+            try {
+                Class<?> c = Class.forName(name, false,
+                        (loader != null) ? loader : Parcel.class.getClassLoader());
+                Field f = c.getField("CREATOR");
+                creator = (Parcelable.Creator<?>) f.get(null);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("No CREATOR for " + name, e);
+            }
+            sCreators.put(name, creator);
+        }
+        return creator;
+    }
+
+    private void ensure(int bytes) {
+        if (mPos + bytes > mData.length) {
+            byte[] data = new byte[Math.max(mData.length * 2, mPos + bytes)];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            mData = data;
+        }
+    }
+
+    private void advance(int bytes) {
+        mPos += bytes;
+        if (mPos > mSize) {
+            mSize = mPos;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.gsma.joyn.ApiMethods;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatch cost of the JoynService calls on the API interface, without the
+ * binder transaction: the method looked up on each call as before, the
+ * method cached by ApiMethods as JoynService does now, and a typed call for
+ * reference. The API is a local object with the methods of an AIDL proxy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ApiDispatchBenchmark {
+    /**
+     * Stand-in of an AIDL proxy of a service API
+     */
+    public static final class Api {
+        private int mVersion = 2;
+
+        public int getServiceVersion() {
+            return mVersion;
+        }
+
+        public boolean isServiceRegistered() {
+            return mVersion > 0;
+        }
+    }
+
+    private final Api mApi = new Api();
+    private final Object mTarget = mApi;
+
+    /**
+     * Method looked up on each call, the dispatch before the method cache
+     */
+    @Benchmark
+    public Object lookupAndInvoke() throws Exception {
+        Method m = mTarget.getClass().getDeclaredMethod("getServiceVersion");
+        return m.invoke(mTarget);
+    }
+
+    /**
+     * Method resolved once and cached, the dispatch of JoynService
+     */
+    @Benchmark
+    public Object cachedInvoke() throws Exception {
+        Method m = ApiMethods.get(mTarget.getClass(), "getServiceVersion", null);
+        return m.invoke(mTarget);
+    }
+
+    /**
+     * Typed call, the lower bound of any dispatch
+     */
+    @Benchmark
+    public int typed() {
+        return mApi.getServiceVersion();
+    }
+}
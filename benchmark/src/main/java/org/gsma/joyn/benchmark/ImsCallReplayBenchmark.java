@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import com.android.ims.ImsCallStateMachine;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays the transitions of an ImsCall through ImsCallStateMachine. Each
+ * scenario is the sequence of events fed by ImsCall for a call flow, with
+ * their input. The setup records the scenario in a state machine and checks
+ * that its log replays. The benchmarks measure the cost of one transition,
+ * applied and recorded as ImsCall does or replayed from the log, and of the
+ * replay of the whole log.
+ *
+ * To replay the log of a device, paste the event and input columns of
+ * ImsCall.dump() in a scenario.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImsCallReplayBenchmark {
+    public static final String HOLD_RESUME = "holdResume";
+    public static final String MERGE_HOST = "mergeHost";
+    public static final String MERGE_PEER = "mergePeer";
+
+    // Size of the log, as in ImsCall
+    private static final int LOG_SIZE = 32;
+
+    // Outgoing call held, resumed, upgraded and terminated
+    private static final int[] SCENARIO_HOLD_RESUME = {
+        ImsCallStateMachine.EVENT_START, 0,
+        ImsCallStateMachine.EVENT_PROGRESSING, 0,
+        ImsCallStateMachine.EVENT_STARTED, 0,
+        ImsCallStateMachine.EVENT_HOLD, 0,
+        ImsCallStateMachine.EVENT_HELD, 0,
+        ImsCallStateMachine.EVENT_RESUME, 0,
+        ImsCallStateMachine.EVENT_RESUMED, 0,
+        ImsCallStateMachine.EVENT_UPDATE, 4,
+        ImsCallStateMachine.EVENT_UPDATED, 0,
+        ImsCallStateMachine.EVENT_TERMINATE, 501,
+        ImsCallStateMachine.EVENT_TERMINATED, 501,
+        ImsCallStateMachine.EVENT_MERGE_CLEARED, 0,
+        ImsCallStateMachine.EVENT_CLEAR, 501,
+    };
+
+    // Foreground call merged with a held call into a new conference, the
+    // foreground call hosting the merge and holding first
+    private static final int[] SCENARIO_MERGE_HOST = {
+        ImsCallStateMachine.EVENT_START, 0,
+        ImsCallStateMachine.EVENT_MERGE_PENDING, 0,
+        ImsCallStateMachine.EVENT_STARTED, 0,
+        ImsCallStateMachine.EVENT_MERGE_PENDING, 1,
+        ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_HOST,
+        ImsCallStateMachine.EVENT_MERGE, ImsCallStateMachine.MERGE_HOLD_FIRST,
+        ImsCallStateMachine.EVENT_HELD, 0,
+        ImsCallStateMachine.EVENT_MERGE_STARTED, 0,
+        ImsCallStateMachine.EVENT_TERMINATED, 510,
+        ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 1,
+        ImsCallStateMachine.EVENT_MERGE_PENDING, 0,
+        ImsCallStateMachine.EVENT_MERGE_COMPLETE, 0,
+        ImsCallStateMachine.EVENT_MERGED, 0,
+        ImsCallStateMachine.EVENT_MERGE_CLEARED, 0,
+        ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 0,
+        ImsCallStateMachine.EVENT_MULTIPARTY_STATE_CHANGED, 1,
+    };
+
+    // The held call of SCENARIO_MERGE_HOST
+    private static final int[] SCENARIO_MERGE_PEER = {
+        ImsCallStateMachine.EVENT_START, 0,
+        ImsCallStateMachine.EVENT_STARTED, 0,
+        ImsCallStateMachine.EVENT_HOLD, 0,
+        ImsCallStateMachine.EVENT_HELD, 0,
+        ImsCallStateMachine.EVENT_MERGE_PENDING, 1,
+        ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_PEER,
+        ImsCallStateMachine.EVENT_TERMINATED, 510,
+        ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 1,
+        ImsCallStateMachine.EVENT_MERGE_PENDING, 0,
+        ImsCallStateMachine.EVENT_MERGED, 1,
+        ImsCallStateMachine.EVENT_MERGE_CLEARED, 0,
+        ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 0,
+        ImsCallStateMachine.EVENT_TERMINATED, 510,
+        ImsCallStateMachine.EVENT_CLEAR, 510,
+    };
+
+    @Param({HOLD_RESUME, MERGE_HOST, MERGE_PEER})
+    public String scenario;
+
+    private int[] mScenario;
+    private int[] mEvents = new int[LOG_SIZE];
+    private int[] mInputs = new int[LOG_SIZE];
+    private int[] mOldStates = new int[LOG_SIZE];
+    private int[] mNewStates = new int[LOG_SIZE];
+    private int mCount;
+    private ImsCallStateMachine mStateMachine;
+    private int mState;
+    private int mNext;
+    private int mReplayNext;
+
+    static int[] getScenario(String name) {
+        if (HOLD_RESUME.equals(name)) {
+            return SCENARIO_HOLD_RESUME;
+        } else if (MERGE_HOST.equals(name)) {
+            return SCENARIO_MERGE_HOST;
+        } else if (MERGE_PEER.equals(name)) {
+            return SCENARIO_MERGE_PEER;
+        }
+        throw new IllegalArgumentException("Unknown scenario " + name);
+    }
+
+    /**
+     * Feeds a scenario to a state machine, from the initial state of a call
+     *
+     * @return the final state
+     */
+    static int run(ImsCallStateMachine stateMachine, int[] scenario) {
+        int state = 0;
+        for (int i = 0; i < scenario.length; i += 2) {
+            state = stateMachine.fire(state, scenario[i], scenario[i + 1], i);
+        }
+        return state;
+    }
+
+    @Setup
+    public void setup() {
+        mScenario = getScenario(scenario);
+        mStateMachine = new ImsCallStateMachine(LOG_SIZE);
+        run(mStateMachine, mScenario);
+        mCount = mStateMachine.getLog(mEvents, mInputs, mOldStates, mNewStates);
+        int mismatch = ImsCallStateMachine.replay(mEvents, mInputs, mOldStates, mNewStates,
+                mCount);
+        if (mismatch >= 0) {
+            throw new IllegalStateException("Replay of " + scenario + " fails at " + mismatch);
+        }
+    }
+
+    /**
+     * Cost of one transition applied and recorded, as in ImsCall. Each call
+     * feeds the next event of the scenario.
+     */
+    @Benchmark
+    public int fire() {
+        int i = mNext;
+        int state = mStateMachine.fire(mState, mScenario[i], mScenario[i + 1], i);
+        i += 2;
+        if (i == mScenario.length) {
+            i = 0;
+            state = 0;
+        }
+        mNext = i;
+        mState = state;
+        return state;
+    }
+
+    /**
+     * Cost of one transition replayed from the log
+     */
+    @Benchmark
+    public int next() {
+        int i = mReplayNext;
+        mReplayNext = (i + 1 == mCount) ? 0 : i + 1;
+        return ImsCallStateMachine.next(mOldStates[i], mEvents[i], mInputs[i]);
+    }
+
+    /**
+     * Cost of the replay of the whole log, with the check of every state
+     */
+    @Benchmark
+    public int replay() {
+        return ImsCallStateMachine.replay(mEvents, mInputs, mOldStates, mNewStates, mCount);
+    }
+
+    /**
+     * Prints the log of each scenario
+     */
+    public static void main(String[] args) {
+        PrintWriter pw = new PrintWriter(System.out);
+        for (String name : new String[] { HOLD_RESUME, MERGE_HOST, MERGE_PEER }) {
+            ImsCallStateMachine stateMachine = new ImsCallStateMachine(LOG_SIZE);
+            run(stateMachine, getScenario(name));
+            pw.println(name + ":");
+            stateMachine.dump(pw);
+        }
+        pw.flush();
+    }
+}
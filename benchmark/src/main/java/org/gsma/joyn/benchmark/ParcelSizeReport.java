@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import android.os.Parcel;
+
+/**
+ * Prints the size of the binder payload of each measured type
+ */
+public final class ParcelSizeReport {
+    private ParcelSizeReport() {
+    }
+
+    public static void main(String[] args) {
+        for (String type : Samples.TYPES) {
+            Parcel p = Parcel.obtain();
+            p.writeParcelable(Samples.create(type), 0);
+            System.out.println(String.format("%-24s %6d bytes", type, p.dataSize()));
+            p.recycle();
+        }
+    }
+}
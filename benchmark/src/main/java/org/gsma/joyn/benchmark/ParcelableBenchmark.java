@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Marshalling cost of the Parcelable types exchanged with the RCS core
+ * service. The parcel is the pure-JVM stand-in of this module, so the
+ * numbers compare the types and their revisions, not the native Parcel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParcelableBenchmark {
+    @Param({
+        Samples.CAPABILITIES, Samples.JOYN_CONTACT, Samples.CHAT_MESSAGE,
+        Samples.CONFERENCE_EVENT_DATA, Samples.GEOLOC, Samples.VSH_VIDEO_CODEC,
+        Samples.IPCALL_AUDIO_CODEC, Samples.IPCALL_VIDEO_CODEC
+    })
+    public String type;
+
+    private Parcelable mValue;
+    private Parcel mWriteParcel;
+    private Parcel mReadParcel;
+
+    @Setup
+    public void setup() {
+        mValue = Samples.create(type);
+        mWriteParcel = Parcel.obtain();
+        mReadParcel = Parcel.obtain();
+        mReadParcel.writeParcelable(mValue, 0);
+    }
+
+    @Benchmark
+    public int write() {
+        Parcel p = mWriteParcel;
+        p.setDataSize(0);
+        p.setDataPosition(0);
+        p.writeParcelable(mValue, 0);
+        return p.dataSize();
+    }
+
+    @Benchmark
+    public Parcelable read() {
+        Parcel p = mReadParcel;
+        p.setDataPosition(0);
+        return p.readParcelable(null);
+    }
+
+    @Benchmark
+    public Parcelable roundTrip() {
+        Parcel p = mWriteParcel;
+        p.setDataSize(0);
+        p.setDataPosition(0);
+        p.writeParcelable(mValue, 0);
+        p.setDataPosition(0);
+        return p.readParcelable(null);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.gsma.joyn.Logger;
+import org.gsma.joyn.capability.Capabilities;
+import org.gsma.joyn.chat.ChatMessage;
+import org.gsma.joyn.chat.ConferenceEventData;
+import org.gsma.joyn.chat.ConferenceEventData.ConferenceUser;
+import org.gsma.joyn.chat.Geoloc;
+import org.gsma.joyn.contacts.JoynContact;
+import org.gsma.joyn.ipcall.AudioCodec;
+
+/**
+ * Representative instances of the measured Parcelable types
+ */
+final class Samples {
+    static final String CAPABILITIES = "Capabilities";
+    static final String JOYN_CONTACT = "JoynContact";
+    static final String CHAT_MESSAGE = "ChatMessage";
+    static final String CONFERENCE_EVENT_DATA = "ConferenceEventData";
+    static final String GEOLOC = "Geoloc";
+    static final String VSH_VIDEO_CODEC = "vsh.VideoCodec";
+    static final String IPCALL_AUDIO_CODEC = "ipcall.AudioCodec";
+    static final String IPCALL_VIDEO_CODEC = "ipcall.VideoCodec";
+
+    static final String[] TYPES = {
+        CAPABILITIES, JOYN_CONTACT, CHAT_MESSAGE, CONFERENCE_EVENT_DATA, GEOLOC,
+        VSH_VIDEO_CODEC, IPCALL_AUDIO_CODEC, IPCALL_VIDEO_CODEC
+    };
+
+    private static final String H264_PARAMETERS =
+            "profile-level-id=42e00a;packetization-mode=1;sprop-parameter-sets=J0LgCpWgUH5A,KM4GDIA=";
+
+    private Samples() {
+    }
+
+    static Parcelable create(String type) {
+        // The constructors log their arguments
+        Logger.setLogEnabled(false);
+        if (CAPABILITIES.equals(type)) {
+            return capabilities();
+        } else if (JOYN_CONTACT.equals(type)) {
+            return new JoynContact("+33612345678", true, capabilities());
+        } else if (CHAT_MESSAGE.equals(type)) {
+            return new ChatMessage("Msg1a2b3c4d5e6f", "+33612345678",
+                    "Are we still meeting at the station at six?", new Date(1400000000000L),
+                    true, "Alice");
+        } else if (CONFERENCE_EVENT_DATA.equals(type)) {
+            List<ConferenceUser> users = new ArrayList<ConferenceUser>();
+            for (int i = 0; i < 5; i++) {
+                users.add(new ConferenceUser("sip:+3361234567" + i + "@ims.example.com",
+                        "connected", "connected", "dial-out", "participant", "full",
+                        "User " + i));
+            }
+            return new ConferenceEventData("full", "Weekly sync",
+                    "sip:+33612345670@ims.example.com", users);
+        } else if (GEOLOC.equals(type)) {
+            return new Geoloc("Office", 48.8566, 2.3522, 1400003600000L, 12.5f);
+        } else if (VSH_VIDEO_CODEC.equals(type)) {
+            return new org.gsma.joyn.vsh.VideoCodec("H264", 96, 90000, 15, 384000, 320, 240,
+                    H264_PARAMETERS);
+        } else if (IPCALL_AUDIO_CODEC.equals(type)) {
+            return new AudioCodec("AMR-WB", 97, 16000, "octet-align=1");
+        } else if (IPCALL_VIDEO_CODEC.equals(type)) {
+            return new org.gsma.joyn.ipcall.VideoCodec("H264", 96, 90000, 15, 384000, 320, 240,
+                    H264_PARAMETERS);
+        }
+        throw new IllegalArgumentException("Unknown type " + type);
+    }
+
+    private static Capabilities capabilities() {
+        Set<String> extensions = new HashSet<String>();
+        extensions.add("gsma.joyn.game");
+        extensions.add("gsma.joyn.whiteboard");
+        return new Capabilities(true, true, true, true, true, true, false, extensions,
+                false, true, true, false, true, false);
+    }
+}
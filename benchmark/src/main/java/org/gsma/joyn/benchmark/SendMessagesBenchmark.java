@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gsma.joyn.benchmark;
+
+import android.os.Parcel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of sending a burst of chat messages with one IChat.sendMessage call
+ * per message or with one IChat.sendMessages call. A binder transaction is
+ * modelled as the marshalling of the request and of the reply in the Parcel
+ * stand-in of this module, plus a fixed cost in Blackhole.consumeCPU tokens
+ * for the kernel round trip and the thread switches. The fixed cost is a
+ * parameter: the native cost is not measured here, run the benchmark with
+ * the value that matches the device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SendMessagesBenchmark {
+    // Number of messages of the burst
+    @Param({"1", "5", "20"})
+    public int count;
+
+    // Fixed cost of a transaction, in Blackhole.consumeCPU tokens
+    @Param({"0", "10000"})
+    public int transactionCost;
+
+    private List<String> mMessages;
+    private String[] mIds;
+    private final Parcel mData = Parcel.obtain();
+    private final Parcel mReply = Parcel.obtain();
+
+    @Setup
+    public void setup() {
+        mMessages = new ArrayList<String>(count);
+        mIds = new String[count];
+        for (int i = 0; i < count; i++) {
+            mMessages.add("Message " + i + " of the burst, with a typical chat length");
+            mIds[i] = "Msg" + Long.toHexString(0x5a5a5a5a5a5aL + i);
+        }
+    }
+
+    private static void reset(Parcel p) {
+        p.setDataSize(0);
+        p.setDataPosition(0);
+    }
+
+    /**
+     * IChat.sendMessage: one message in, one ID out
+     */
+    private String sendMessage(String message, int index) {
+        reset(mData);
+        mData.writeString(message);
+        Blackhole.consumeCPU(transactionCost);
+        mData.setDataPosition(0);
+        mData.readString();
+        reset(mReply);
+        mReply.writeString(mIds[index]);
+        mReply.setDataPosition(0);
+        return mReply.readString();
+    }
+
+    /**
+     * IChat.sendMessages: the list in, the list of IDs out
+     */
+    private List<String> sendMessages(List<String> messages) {
+        reset(mData);
+        mData.writeStringList(messages);
+        Blackhole.consumeCPU(transactionCost);
+        mData.setDataPosition(0);
+        List<String> received = mData.createStringArrayList();
+        reset(mReply);
+        mReply.writeInt(received.size());
+        for (int i = 0; i < received.size(); i++) {
+            mReply.writeString(mIds[i]);
+        }
+        mReply.setDataPosition(0);
+        return mReply.createStringArrayList();
+    }
+
+    @Benchmark
+    public List<String> single() {
+        List<String> ids = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(sendMessage(mMessages.get(i), i));
+        }
+        return ids;
+    }
+
+    @Benchmark
+    public List<String> batch() {
+        return sendMessages(mMessages);
+    }
+}
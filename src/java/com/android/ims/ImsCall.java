@@ -18,8 +18,12 @@ package com.android.ims;
 
 import com.android.internal.R;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -28,6 +32,7 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Message;
+import android.os.SystemClock;
 import android.telecom.ConferenceParticipant;
 import android.telecom.Connection;
 import java.util.Objects;
@@ -73,6 +78,37 @@ public class ImsCall implements ICall {
     private static final boolean CONF_DBG = true;
 
     private List<ConferenceParticipant> mConferenceParticipants;
+
+    /**
+     * Conference participant as last reported in a conference event package, keyed by the
+     * participant key of the {@link ImsConferenceState}.  The raw values are kept so that an
+     * unchanged participant is recognized without building a new {@link ConferenceParticipant}.
+     */
+    private static final class ConferenceParticipantEntry {
+        final String status;
+        final String user;
+        final String displayName;
+        final String endpoint;
+        final ConferenceParticipant participant;
+
+        ConferenceParticipantEntry(String status, String user, String displayName,
+                String endpoint, ConferenceParticipant participant) {
+            this.status = status;
+            this.user = user;
+            this.displayName = displayName;
+            this.endpoint = endpoint;
+            this.participant = participant;
+        }
+
+        boolean matches(String status, String user, String displayName, String endpoint) {
+            return Objects.equals(this.status, status) && Objects.equals(this.user, user)
+                    && Objects.equals(this.displayName, displayName)
+                    && Objects.equals(this.endpoint, endpoint);
+        }
+    }
+
+    private LinkedHashMap<String, ConferenceParticipantEntry> mConferenceParticipantTable =
+            new LinkedHashMap<String, ConferenceParticipantEntry>();
     /**
      * Listener for events relating to an IMS call, such as when a call is being
      * received ("on ringing") or a call is outgoing ("on calling").
@@ -336,6 +372,22 @@ public class ImsCall implements ICall {
             // no-op
         }
 
+        /**
+         * Called when conference participant(s) have joined, changed or left the conference.
+         * Only the participants which differ from the previous conference event package are
+         * reported.
+         *
+         * @param call the call object that carries out the IMS call.
+         * @param added the participants which were not part of the previous update.
+         * @param changed the participants whose state information has changed.
+         * @param removed the participants which are no longer part of the conference.
+         */
+        public void onConferenceParticipantsChanged(ImsCall call,
+                List<ConferenceParticipant> added, List<ConferenceParticipant> changed,
+                List<ConferenceParticipant> removed) {
+            // no-op
+        }
+
         /**
          * Called when the USSD message is received from the network.
          *
@@ -452,16 +504,49 @@ public class ImsCall implements ICall {
     }
 
     // List of update operation for IMS call control
-    private static final int UPDATE_NONE = 0;
-    private static final int UPDATE_HOLD = 1;
-    private static final int UPDATE_HOLD_MERGE = 2;
-    private static final int UPDATE_RESUME = 3;
-    private static final int UPDATE_MERGE = 4;
-    private static final int UPDATE_EXTEND_TO_CONFERENCE = 5;
-    private static final int UPDATE_UNSPECIFIED = 6;
-
-    // For synchronization of private variables
-    private Object mLockObj = new Object();
+    private static final int UPDATE_NONE = ImsCallStateMachine.UPDATE_NONE;
+    private static final int UPDATE_HOLD = ImsCallStateMachine.UPDATE_HOLD;
+    private static final int UPDATE_HOLD_MERGE = ImsCallStateMachine.UPDATE_HOLD_MERGE;
+    private static final int UPDATE_RESUME = ImsCallStateMachine.UPDATE_RESUME;
+    private static final int UPDATE_MERGE = ImsCallStateMachine.UPDATE_MERGE;
+    private static final int UPDATE_EXTEND_TO_CONFERENCE =
+            ImsCallStateMachine.UPDATE_EXTEND_TO_CONFERENCE;
+    private static final int UPDATE_UNSPECIFIED = ImsCallStateMachine.UPDATE_UNSPECIFIED;
+
+    /**
+     * Immutable view of the call state read by the getters. A new instance is published
+     * with {@link #publishState()} on every transition so that readers never block on
+     * {@link #mLockObj}.
+     */
+    private static final class CallState {
+        final ImsCallSession session;
+        final ImsCallProfile callProfile;
+        final ImsReasonInfo lastReasonInfo;
+        final boolean inCall;
+        final boolean hold;
+        final boolean mute;
+        final int updateRequest;
+
+        CallState(ImsCallSession session, ImsCallProfile callProfile,
+                ImsReasonInfo lastReasonInfo, boolean inCall, boolean hold, boolean mute,
+                int updateRequest) {
+            this.session = session;
+            this.callProfile = callProfile;
+            this.lastReasonInfo = lastReasonInfo;
+            this.inCall = inCall;
+            this.hold = hold;
+            this.mute = mute;
+            this.updateRequest = updateRequest;
+        }
+    }
+
+    // For synchronization of private variables; all the writers are serialized on it
+    private final Object mLockObj = new Object();
+    // Serializes the publications of mState. No other lock is taken while holding it, so a
+    // call may publish the state of its merge partner while holding its own mLockObj.
+    private final Object mStateLock = new Object();
+    // Latest published state, read without locking
+    private volatile CallState mState;
     private Context mContext;
 
     // true if the call is established & in the conversation state
@@ -552,6 +637,17 @@ public class ImsCall implements ICall {
      */
     private boolean mIsConferenceHost = false;
 
+    // Size of the transition log
+    private static final int TRANSITION_LOG_SIZE = 32;
+
+    // Transitions of the update request and merge state, with the log of the last ones.
+    // The fields of the state are only changed through transition().
+    private final ImsCallStateMachine mStateMachine =
+            new ImsCallStateMachine(TRANSITION_LOG_SIZE);
+
+    // Call setup latency trace, reported to ImsCallSetupMetrics when the call is started
+    private final ImsCallSetupMetrics.Trace mSetupTrace = new ImsCallSetupMetrics.Trace();
+
     /**
      * Create an IMS call object.
      *
@@ -561,6 +657,127 @@ public class ImsCall implements ICall {
     public ImsCall(Context context, ImsCallProfile profile) {
         mContext = context;
         mCallProfile = profile;
+        publishState();
+    }
+
+    /**
+     * Publishes a new snapshot of the call state for the lock-free getters.
+     * Must be called after any change of the fields captured in {@link CallState}, by the
+     * thread which made the change.
+     *
+     * The snapshot is taken under {@link #mStateLock} rather than {@link #mLockObj}: a call
+     * which updates its merge partner publishes the partner's state without taking the
+     * partner's mLockObj, which would lock the two calls in opposite orders from their
+     * session callback threads. As every publication of a call reads the fields under the
+     * same lock, the last one sees the changes of all the threads which published before it,
+     * and a concurrent publication by the partner cannot overwrite them with older values.
+     */
+    private void publishState() {
+        synchronized(mStateLock) {
+            mState = new CallState(mSession, mCallProfile, mLastReasonInfo, mInCall, mHold,
+                    mMute, mUpdateRequest);
+        }
+    }
+
+    /**
+     * Applies an event to the state of this call and records the transition.
+     * See {@link ImsCallStateMachine} for the events and their input.
+     *
+     * @param event the event, one of the ImsCallStateMachine.EVENT_* constants
+     * @param input the input of the event
+     */
+    private void transition(int event, int input) {
+        int state = encodeState();
+        applyState(state, mStateMachine.fire(state, event, input,
+                SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Encodes the update request and the merge flags of this call.
+     */
+    private int encodeState() {
+        int state = mUpdateRequest & ImsCallStateMachine.STATE_UPDATE_MASK;
+        if (mInCall) state |= ImsCallStateMachine.STATE_IN_CALL;
+        if (mHold) state |= ImsCallStateMachine.STATE_HOLD;
+        if (isMergeHost()) state |= ImsCallStateMachine.STATE_MERGE_HOST;
+        if (isMergePeer()) state |= ImsCallStateMachine.STATE_MERGE_PEER;
+        if (mCallSessionMergePending) state |= ImsCallStateMachine.STATE_MERGE_PENDING;
+        if (mSessionEndDuringMerge) state |= ImsCallStateMachine.STATE_SESSION_END_DURING_MERGE;
+        if (mIsConferenceMerging) state |= ImsCallStateMachine.STATE_CONFERENCE_MERGING;
+        if (mTerminationRequestPending) state |= ImsCallStateMachine.STATE_TERMINATION_PENDING;
+        if (mIsMerged) state |= ImsCallStateMachine.STATE_MERGED;
+        return state;
+    }
+
+    /**
+     * Sets the fields of this call that differ between two encoded states. Only the
+     * changed fields are written, as some transitions of a merge partner are made
+     * without its lock. The merge role bits follow mMergeHost and mMergePeer, which
+     * are set by the caller.
+     */
+    private void applyState(int oldState, int newState) {
+        int changed = oldState ^ newState;
+        if ((changed & ImsCallStateMachine.STATE_UPDATE_MASK) != 0) {
+            mUpdateRequest = newState & ImsCallStateMachine.STATE_UPDATE_MASK;
+        }
+        if ((changed & ImsCallStateMachine.STATE_IN_CALL) != 0) {
+            mInCall = (newState & ImsCallStateMachine.STATE_IN_CALL) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_HOLD) != 0) {
+            mHold = (newState & ImsCallStateMachine.STATE_HOLD) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_MERGE_PENDING) != 0) {
+            mCallSessionMergePending = (newState & ImsCallStateMachine.STATE_MERGE_PENDING) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_SESSION_END_DURING_MERGE) != 0) {
+            mSessionEndDuringMerge =
+                    (newState & ImsCallStateMachine.STATE_SESSION_END_DURING_MERGE) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_CONFERENCE_MERGING) != 0) {
+            mIsConferenceMerging =
+                    (newState & ImsCallStateMachine.STATE_CONFERENCE_MERGING) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_TERMINATION_PENDING) != 0) {
+            mTerminationRequestPending =
+                    (newState & ImsCallStateMachine.STATE_TERMINATION_PENDING) != 0;
+        }
+        if ((changed & ImsCallStateMachine.STATE_MERGED) != 0) {
+            mIsMerged = (newState & ImsCallStateMachine.STATE_MERGED) != 0;
+        }
+    }
+
+    private static int codeOf(ImsReasonInfo reasonInfo) {
+        return (reasonInfo != null) ? reasonInfo.getCode() : ImsReasonInfo.CODE_UNSPECIFIED;
+    }
+
+    /**
+     * Dumps the transition log of this call, oldest event first, as
+     * {@code time event(input): old state -> new state}. The log can be
+     * replayed with {@link ImsCallStateMachine#replay}.
+     *
+     * @hide
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("ImsCall " + System.identityHashCode(this) + " transitions:");
+        mStateMachine.dump(pw);
+    }
+
+    /**
+     * Logs the transition log of this call.
+     */
+    private void logTransitions() {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        dump(pw);
+        pw.flush();
+        logi(sw.toString());
+    }
+
+    /**
+     * Returns the call setup latency trace of this call.
+     */
+    ImsCallSetupMetrics.Trace getSetupTrace() {
+        return mSetupTrace;
     }
 
     /**
@@ -580,6 +797,7 @@ public class ImsCall implements ICall {
             mProposedCallProfile = null;
             mLastReasonInfo = null;
             mMediaSession = null;
+            publishState();
         }
     }
 
@@ -648,9 +866,7 @@ public class ImsCall implements ICall {
      * @return a {@link ImsCallProfile} object that has the negotiated call profile
      */
     public ImsCallProfile getCallProfile() {
-        synchronized(mLockObj) {
-            return mCallProfile;
-        }
+        return mState.callProfile;
     }
 
     /**
@@ -731,13 +947,12 @@ public class ImsCall implements ICall {
      * @return the session state
      */
     public int getState() {
-        synchronized(mLockObj) {
-            if (mSession == null) {
-                return ImsCallSession.State.IDLE;
-            }
-
-            return mSession.getState();
+        ImsCallSession session = mState.session;
+        if (session == null) {
+            return ImsCallSession.State.IDLE;
         }
+
+        return session.getState();
     }
 
     /**
@@ -747,9 +962,7 @@ public class ImsCall implements ICall {
      * @hide
      */
     public ImsCallSession getCallSession() {
-        synchronized(mLockObj) {
-            return mSession;
-        }
+        return mState.session;
     }
 
     /**
@@ -796,9 +1009,7 @@ public class ImsCall implements ICall {
      * @return the last reason information
      */
     public ImsReasonInfo getLastReasonInfo() {
-        synchronized(mLockObj) {
-            return mLastReasonInfo;
-        }
+        return mState.lastReasonInfo;
     }
 
     /**
@@ -807,9 +1018,7 @@ public class ImsCall implements ICall {
      * @return true if the call has a pending update operation
      */
     public boolean hasPendingUpdate() {
-        synchronized(mLockObj) {
-            return (mUpdateRequest != UPDATE_NONE);
-        }
+        return (mState.updateRequest != UPDATE_NONE);
     }
 
     /**
@@ -818,9 +1027,7 @@ public class ImsCall implements ICall {
      * @return true if the call is pending a hold operation.
      */
     public boolean isPendingHold() {
-        synchronized(mLockObj) {
-            return (mUpdateRequest == UPDATE_HOLD);
-        }
+        return (mState.updateRequest == UPDATE_HOLD);
     }
 
     /**
@@ -829,9 +1036,7 @@ public class ImsCall implements ICall {
      * @return true if the call is established
      */
     public boolean isInCall() {
-        synchronized(mLockObj) {
-            return mInCall;
-        }
+        return mState.inCall;
     }
 
     /**
@@ -840,9 +1045,7 @@ public class ImsCall implements ICall {
      * @return true if the call is muted
      */
     public boolean isMuted() {
-        synchronized(mLockObj) {
-            return mMute;
-        }
+        return mState.mute;
     }
 
     /**
@@ -851,9 +1054,7 @@ public class ImsCall implements ICall {
      * @return true if the call is on hold
      */
     public boolean isOnHold() {
-        synchronized(mLockObj) {
-            return mHold;
-        }
+        return mState.hold;
     }
 
     /**
@@ -862,13 +1063,12 @@ public class ImsCall implements ICall {
      * @return {@code True} if the call is a multiparty call.
      */
     public boolean isMultiparty() {
-        synchronized(mLockObj) {
-            if (mSession == null) {
-                return false;
-            }
-
-            return mSession.isMultiparty();
+        ImsCallSession session = mState.session;
+        if (session == null) {
+            return false;
         }
+
+        return session.isMultiparty();
     }
 
     /**
@@ -892,7 +1092,7 @@ public class ImsCall implements ICall {
      * @param isMerged Whether the call is merged.
      */
     public void setIsMerged(boolean isMerged) {
-        mIsMerged = isMerged;
+        transition(ImsCallStateMachine.EVENT_MERGED, isMerged ? 1 : 0);
     }
 
     /**
@@ -978,6 +1178,7 @@ public class ImsCall implements ICall {
             if (mMute != muted) {
                 logi("setMute :: turning mute " + (muted ? "on" : "off"));
                 mMute = muted;
+                publishState();
 
                 try {
                     mSession.setMute(muted);
@@ -1000,6 +1201,7 @@ public class ImsCall implements ICall {
 
          synchronized(mLockObj) {
              mSession = session;
+             publishState();
 
              try {
                  mSession.setListener(createCallSessionListener());
@@ -1020,14 +1222,17 @@ public class ImsCall implements ICall {
      */
     public void start(ImsCallSession session, String callee)
             throws ImsException {
+        transition(ImsCallStateMachine.EVENT_START, 0);
         logi("start(1) :: session=" + session + ", callee=" + callee);
 
         synchronized(mLockObj) {
             mSession = session;
+            publishState();
 
             try {
                 session.setListener(createCallSessionListener());
                 session.start(callee, mCallProfile);
+                mSetupTrace.mark(ImsCallSetupMetrics.PHASE_START);
                 /// M: for conference. @{
                 mAddress = callee;
                 /// @}
@@ -1048,10 +1253,12 @@ public class ImsCall implements ICall {
      */
     public void start(ImsCallSession session, String[] participants)
             throws ImsException {
+        transition(ImsCallStateMachine.EVENT_START, 0);
         logi("start(n) :: session=" + session + ", callee=" + participants);
 
         synchronized(mLockObj) {
             mSession = session;
+            publishState();
 
             /// M: For VoLTE enhanced conference call. @{
             /// If not set conference host for one-key conference, the conference will not be
@@ -1065,6 +1272,7 @@ public class ImsCall implements ICall {
             try {
                 session.setListener(createCallSessionListener());
                 session.start(participants, mCallProfile);
+                mSetupTrace.mark(ImsCallSetupMetrics.PHASE_START);
             } catch (Throwable t) {
                 loge("start(n) :: ", t);
                 throw new ImsException("start(n)", t, 0);
@@ -1101,6 +1309,7 @@ public class ImsCall implements ICall {
                         ImsReasonInfo.CODE_LOCAL_CALL_TERMINATED);
             }
 
+            mSetupTrace.mark(ImsCallSetupMetrics.PHASE_ACCEPT);
             try {
                 mSession.accept(callType, profile);
             } catch (Throwable t) {
@@ -1117,10 +1326,9 @@ public class ImsCall implements ICall {
                 mProposedCallProfile = null;
             }
 
-            // Other call update received
-            if (mInCall && (mUpdateRequest == UPDATE_UNSPECIFIED)) {
-                mUpdateRequest = UPDATE_NONE;
-            }
+            // Answers the other call update received, if any
+            transition(ImsCallStateMachine.EVENT_ACCEPT, callType);
+            publishState();
         }
     }
 
@@ -1147,10 +1355,9 @@ public class ImsCall implements ICall {
                 mProposedCallProfile = null;
             }
 
-            // Other call update received
-            if (mInCall && (mUpdateRequest == UPDATE_UNSPECIFIED)) {
-                mUpdateRequest = UPDATE_NONE;
-            }
+            // Rejects the other call update received, if any
+            transition(ImsCallStateMachine.EVENT_REJECT, reason);
+            publishState();
         }
     }
 
@@ -1164,9 +1371,8 @@ public class ImsCall implements ICall {
         logi("terminate :: reason=" + reason);
 
         synchronized(mLockObj) {
-            mHold = false;
-            mInCall = false;
-            mTerminationRequestPending = true;
+            transition(ImsCallStateMachine.EVENT_TERMINATE, reason);
+            publishState();
 
             if (mSession != null) {
                 // TODO: Fix the fact that user invoked call terminations during
@@ -1226,8 +1432,8 @@ public class ImsCall implements ICall {
             mSession.hold(createHoldMediaProfile());
             // FIXME: We should update the state on the callback because that is where
             // we can confirm that the hold request was successful or not.
-            mHold = true;
-            mUpdateRequest = UPDATE_HOLD;
+            transition(ImsCallStateMachine.EVENT_HOLD, 0);
+            publishState();
         }
     }
 
@@ -1263,7 +1469,8 @@ public class ImsCall implements ICall {
 
             // mHold is set to false in confirmation callback that the
             // ImsCall was resumed.
-            mUpdateRequest = UPDATE_RESUME;
+            transition(ImsCallStateMachine.EVENT_RESUME, 0);
+            publishState();
             mSession.resume(createResumeMediaProfile());
         }
     }
@@ -1304,8 +1511,15 @@ public class ImsCall implements ICall {
                     // if needed.  There will be no merge failed callback.
                     // Mark both the host and peer UPDATE_MERGE to ensure both are aware that a
                     // merge is pending.
-                    mUpdateRequest = UPDATE_MERGE;
-                    mMergePeer.mUpdateRequest = UPDATE_MERGE;
+                    transition(ImsCallStateMachine.EVENT_MERGE,
+                            ImsCallStateMachine.MERGE_NEW_CONFERENCE);
+                    mMergePeer.transition(ImsCallStateMachine.EVENT_MERGE,
+                            ImsCallStateMachine.MERGE_NEW_CONFERENCE);
+                    publishState();
+                    mMergePeer.publishState();
+                } else {
+                    transition(ImsCallStateMachine.EVENT_MERGE,
+                            ImsCallStateMachine.MERGE_INTO_CONFERENCE);
                 }
 
                 mSession.merge();
@@ -1314,8 +1528,8 @@ public class ImsCall implements ICall {
                 // when we get the callback that the hold was successful (or failed), we should
                 // automatically request a merge.
                 mSession.hold(createHoldMediaProfile());
-                mHold = true;
-                mUpdateRequest = UPDATE_HOLD_MERGE;
+                transition(ImsCallStateMachine.EVENT_MERGE, ImsCallStateMachine.MERGE_HOLD_FIRST);
+                publishState();
             }
         }
     }
@@ -1392,7 +1606,8 @@ public class ImsCall implements ICall {
             }
 
             mSession.update(callType, mediaProfile);
-            mUpdateRequest = UPDATE_UNSPECIFIED;
+            transition(ImsCallStateMachine.EVENT_UPDATE, callType);
+            publishState();
         }
     }
 
@@ -1429,7 +1644,8 @@ public class ImsCall implements ICall {
             }
 
             mSession.extendToConference(participants);
-            mUpdateRequest = UPDATE_EXTEND_TO_CONFERENCE;
+            transition(ImsCallStateMachine.EVENT_EXTEND_TO_CONFERENCE, 0);
+            publishState();
         }
     }
 
@@ -1438,6 +1654,7 @@ public class ImsCall implements ICall {
      *
      */
     public void inviteParticipants(String[] participants) throws ImsException {
+        transition(ImsCallStateMachine.EVENT_INVITE_PARTICIPANTS, 0);
         logi("inviteParticipants ::");
 
         synchronized(mLockObj) {
@@ -1456,6 +1673,7 @@ public class ImsCall implements ICall {
      *
      */
     public void removeParticipants(String[] participants) throws ImsException {
+        transition(ImsCallStateMachine.EVENT_REMOVE_PARTICIPANTS, 0);
         logi("removeParticipants :: session=" + mSession);
         synchronized(mLockObj) {
             if (mSession == null) {
@@ -1537,10 +1755,9 @@ public class ImsCall implements ICall {
     }
 
     private void clear(ImsReasonInfo lastReasonInfo) {
-        mInCall = false;
-        mHold = false;
-        mUpdateRequest = UPDATE_NONE;
+        transition(ImsCallStateMachine.EVENT_CLEAR, codeOf(lastReasonInfo));
         mLastReasonInfo = lastReasonInfo;
+        publishState();
     }
 
     /**
@@ -1605,8 +1822,8 @@ public class ImsCall implements ICall {
 
     private void enforceConversationMode() {
         if (mInCall) {
-            mHold = false;
-            mUpdateRequest = UPDATE_NONE;
+            transition(ImsCallStateMachine.EVENT_CONVERSATION_MODE, 0);
+            publishState();
         }
     }
 
@@ -1615,8 +1832,8 @@ public class ImsCall implements ICall {
             logi("mergeInternal :: ");
         }
 
+        // The update request was set to UPDATE_MERGE by EVENT_HELD
         mSession.merge();
-        mUpdateRequest = UPDATE_MERGE;
     }
 
     private void notifyConferenceSessionTerminated(ImsReasonInfo reasonInfo) {
@@ -1639,8 +1856,13 @@ public class ImsCall implements ICall {
             return;
         }
 
+        LinkedHashMap<String, ConferenceParticipantEntry> table =
+                new LinkedHashMap<String, ConferenceParticipantEntry>(participants.size() * 2);
+        List<ConferenceParticipant> added = null;
+        List<ConferenceParticipant> changed = null;
+        List<ConferenceParticipant> removed = null;
+
         Iterator<Entry<String, Bundle>> iterator = participants.iterator();
-        mConferenceParticipants = new ArrayList<>(participants.size());
         while (iterator.hasNext()) {
             Entry<String, Bundle> entry = iterator.next();
 
@@ -1651,6 +1873,12 @@ public class ImsCall implements ICall {
             String displayName = confInfo.getString(ImsConferenceState.DISPLAY_TEXT);
             String endpoint = confInfo.getString(ImsConferenceState.ENDPOINT);
 
+            ConferenceParticipantEntry previous = mConferenceParticipantTable.remove(key);
+            if (previous != null && previous.matches(status, user, displayName, endpoint)) {
+                table.put(key, previous);
+                continue;
+            }
+
             if (CONF_DBG) {
                 logi("notifyConferenceStateUpdated :: key=" + key +
                         ", status=" + status +
@@ -1660,10 +1888,7 @@ public class ImsCall implements ICall {
             }
 
             Uri handle = Uri.parse(user);
-            if (endpoint == null) {
-                endpoint = "";
-            }
-            Uri endpointUri = Uri.parse(endpoint);
+            Uri endpointUri = Uri.parse(endpoint == null ? "" : endpoint);
             int connectionState = ImsConferenceState.getConnectionStateForStatus(status);
 
             /// M: Take away the STATE_DISCONNECTED condition,
@@ -1671,12 +1896,55 @@ public class ImsCall implements ICall {
             //if (connectionState != Connection.STATE_DISCONNECTED) {
             ConferenceParticipant conferenceParticipant = new ConferenceParticipant(handle,
                     displayName, endpointUri, connectionState);
-            mConferenceParticipants.add(conferenceParticipant);
+            table.put(key, new ConferenceParticipantEntry(status, user, displayName, endpoint,
+                    conferenceParticipant));
             //}
+
+            if (previous == null) {
+                if (added == null) {
+                    added = new ArrayList<>();
+                }
+                added.add(conferenceParticipant);
+            } else {
+                if (changed == null) {
+                    changed = new ArrayList<>();
+                }
+                changed.add(conferenceParticipant);
+            }
+        }
+
+        // Participants left in the previous table are not part of the conference anymore.
+        if (!mConferenceParticipantTable.isEmpty()) {
+            removed = new ArrayList<>(mConferenceParticipantTable.size());
+            for (ConferenceParticipantEntry entry : mConferenceParticipantTable.values()) {
+                removed.add(entry.participant);
+            }
+        }
+        mConferenceParticipantTable = table;
+
+        if (added == null && changed == null && removed == null
+                && mConferenceParticipants != null) {
+            // Nothing has changed since the previous conference event package.
+            return;
+        }
+
+        mConferenceParticipants = new ArrayList<>(table.size());
+        for (ConferenceParticipantEntry entry : table.values()) {
+            mConferenceParticipants.add(entry.participant);
         }
 
-        if (mConferenceParticipants != null && !mConferenceParticipants.isEmpty()
-                && mListener != null) {
+        if ((added != null || changed != null || removed != null) && mListener != null) {
+            try {
+                mListener.onConferenceParticipantsChanged(this,
+                        added != null ? added : Collections.<ConferenceParticipant>emptyList(),
+                        changed != null ? changed : Collections.<ConferenceParticipant>emptyList(),
+                        removed != null ? removed : Collections.<ConferenceParticipant>emptyList());
+            } catch (Throwable t) {
+                loge("notifyConferenceStateUpdated :: ", t);
+            }
+        }
+
+        if (!mConferenceParticipants.isEmpty() && mListener != null) {
             try {
                 mListener.onConferenceParticipantsStateChanged(this, mConferenceParticipants);
             } catch (Throwable t) {
@@ -1699,7 +1967,7 @@ public class ImsCall implements ICall {
                 mTerminationRequestPending);
 
         ImsCall.Listener listener = null;
-        synchronized(ImsCall.this) {
+        synchronized(mLockObj) {
             // If we are in the midst of establishing a conference, we will bury the termination
             // until the merge has completed.  If necessary we can surface the termination at
             // this point.
@@ -1714,7 +1982,7 @@ public class ImsCall implements ICall {
                 if (CONF_DBG) {
                     logi("processCallTerminated :: burying termination during ongoing merge.");
                 }
-                mSessionEndDuringMerge = true;
+                transition(ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 1);
                 mSessionEndDuringMergeReasonInfo = reasonInfo;
                 return;
             } else if (mTerminationRequestPending) {
@@ -1760,7 +2028,7 @@ public class ImsCall implements ICall {
     }
 
     private void setTransientSessionAsPrimary(ImsCallSession transientSession) {
-        synchronized (ImsCall.this) {
+        synchronized (mLockObj) {
             /// M: ALPS01995879. @{
             if (mSession != null) {
                 /// @}
@@ -1786,6 +2054,7 @@ public class ImsCall implements ICall {
                 }
                 /// @}
             }
+            publishState();
         }
     }
 
@@ -1795,7 +2064,7 @@ public class ImsCall implements ICall {
             // unbury the termination callback.
             logi("maybeMarkPeerAsMerged");
             mMergePeer.setIsMerged(true);
-            mMergePeer.mSessionEndDuringMerge = true;
+            mMergePeer.transition(ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 1);
             mMergePeer.mSessionEndDuringMergeReasonInfo = new ImsReasonInfo(
                     ImsReasonInfo.CODE_UNSPECIFIED, 0,
                     "Call ended during conference merge process.");
@@ -1829,9 +2098,7 @@ public class ImsCall implements ICall {
      * @return current session
      */
     public ImsCallSession getSession() {
-        synchronized(mLockObj) {
-            return mSession;
-       }
+        return mState.session;
     }
 
     /**
@@ -1856,7 +2123,7 @@ public class ImsCall implements ICall {
         ImsCall finalHostCall;
         ImsCall finalPeerCall;
 
-        synchronized(ImsCall.this) {
+        synchronized(mLockObj) {
             if (isMultiparty()) {
                 setIsMerged(false);
                 // if case handles Case 4 explained in callSessionMergeComplete
@@ -1864,7 +2131,8 @@ public class ImsCall implements ICall {
                 if (!mMergeRequestedByConference) {
                     // single call in fg, conference call in bg.
                     // Finally conf call becomes active after conference
-                    this.mHold = false;
+                    transition(ImsCallStateMachine.EVENT_MERGE_RESULT,
+                            ImsCallStateMachine.RESULT_ACTIVE);
                     swapRequired = true;
                 }
                 maybeMarkPeerAsMerged();
@@ -1911,8 +2179,12 @@ public class ImsCall implements ICall {
                     // disconnect sound is called when either call disconnects.
                     // Note that this case is only valid if this is an initial conference being
                     // brought up.
-                    mMergePeer.mHold = false;
-                    this.mHold = true;
+                    mMergePeer.transition(ImsCallStateMachine.EVENT_MERGE_RESULT,
+                            ImsCallStateMachine.RESULT_ACTIVE);
+                    mMergePeer.publishState();
+                    transition(ImsCallStateMachine.EVENT_MERGE_RESULT,
+                            ImsCallStateMachine.RESULT_HELD);
+                    publishState();
                     finalHostCall = mMergePeer;
                     finalPeerCall = this;
                     swapRequired = true;
@@ -2007,7 +2279,7 @@ public class ImsCall implements ICall {
         boolean notifyFailure = false;
         ImsReasonInfo notifyFailureReasonInfo = null;
 
-        synchronized(ImsCall.this) {
+        synchronized(mLockObj) {
             listener = mListener;
             if (mSessionEndDuringMerge) {
                 // Set some local variables that will send out a notification about a
@@ -2032,7 +2304,7 @@ public class ImsCall implements ICall {
     }
 
     private void clearSessionTerminationFlags() {
-        mSessionEndDuringMerge = false;
+        transition(ImsCallStateMachine.EVENT_SESSION_END_DURING_MERGE, 0);
         mSessionEndDuringMergeReasonInfo = null;
     }
 
@@ -2049,7 +2321,7 @@ public class ImsCall implements ICall {
         logi("processMergeFailed :: reason=" + reasonInfo);
 
         ImsCall.Listener listener;
-        synchronized(ImsCall.this) {
+        synchronized(mLockObj) {
             // The logic simplifies if we can assume that this function is only called on
             // the merge host.
             if (!isMergeHost()) {
@@ -2057,6 +2329,13 @@ public class ImsCall implements ICall {
                 return;
             }
 
+            if (CONF_DBG) {
+                logTransitions();
+                if (mMergePeer != null) {
+                    mMergePeer.logTransitions();
+                }
+            }
+
             // Try to clean up the transient session if it exists.
             if (mTransientConferenceSession != null) {
                 mTransientConferenceSession.setListener(null);
@@ -2104,6 +2383,7 @@ public class ImsCall implements ICall {
     private class ImsCallSessionListenerProxy extends ImsCallSession.Listener {
         @Override
         public void callSessionProgressing(ImsCallSession session, ImsStreamMediaProfile profile) {
+            transition(ImsCallStateMachine.EVENT_PROGRESSING, 0);
             logi("callSessionProgressing :: session=" + session + " profile=" + profile);
 
             if (isTransientConferenceSession(session)) {
@@ -2113,9 +2393,11 @@ public class ImsCall implements ICall {
                 return;
             }
 
+            mSetupTrace.mark(ImsCallSetupMetrics.PHASE_PROGRESSING);
+
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile.mMediaProfile.copyFrom(profile);
             }
@@ -2131,6 +2413,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionStarted(ImsCallSession session, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_STARTED, 0);
             logi("callSessionStarted :: session=" + session + " profile=" + profile);
 
             if (!isTransientConferenceSession(session)) {
@@ -2148,11 +2431,14 @@ public class ImsCall implements ICall {
                 return;
             }
 
+            mSetupTrace.started();
+
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
+                publishState();
             }
 
             if (listener != null) {
@@ -2166,6 +2452,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionStartFailed(ImsCallSession session, ImsReasonInfo reasonInfo) {
+            transition(ImsCallStateMachine.EVENT_START_FAILED, codeOf(reasonInfo));
             loge("callSessionStartFailed :: session=" + session + " reasonInfo=" + reasonInfo);
 
             if (isTransientConferenceSession(session)) {
@@ -2175,11 +2462,14 @@ public class ImsCall implements ICall {
                 return;
             }
 
+            mSetupTrace.discard();
+
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mLastReasonInfo = reasonInfo;
+                publishState();
             }
 
             if (listener != null) {
@@ -2193,6 +2483,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionTerminated(ImsCallSession session, ImsReasonInfo reasonInfo) {
+            transition(ImsCallStateMachine.EVENT_TERMINATED, codeOf(reasonInfo));
             logi("callSessionTerminated :: session=" + session + " reasonInfo=" + reasonInfo);
 
             if (isTransientConferenceSession(session)) {
@@ -2229,7 +2520,7 @@ public class ImsCall implements ICall {
             logi("callSessionHeld :: session=" + session + "profile=" + profile);
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 // If the session was held, it is no longer pending a merge -- this means it could
                 // not be merged into the conference and was held instead.
                 /// M: ALPS02327894 @{
@@ -2240,20 +2531,21 @@ public class ImsCall implements ICall {
                 /// @}
 
                 mCallProfile = profile;
+                boolean isHoldForMerge = (mUpdateRequest == UPDATE_HOLD_MERGE);
+                /// M: ALPS02327894 @{
+                /// Workaround for swapping before normal call merge conference call. Update hold
+                /// state. Need to remove when swapping behavior is removed.
+                transition(ImsCallStateMachine.EVENT_HELD, 0);
+                /// @}
+                publishState();
 
-                if (mUpdateRequest == UPDATE_HOLD_MERGE) {
+                if (isHoldForMerge) {
                     // This hold request was made to set the stage for a merge.
                     mergeInternal();
                     return;
                 }
 
-                mUpdateRequest = UPDATE_NONE;
                 listener = mListener;
-                /// M: ALPS02327894 @{
-                /// Workaround for swapping before normal call merge conference call. Update hold
-                /// state. Need to remove when swapping behavior is removed.
-                mHold = true;
-                /// @}
             }
 
             if (listener != null) {
@@ -2279,25 +2571,21 @@ public class ImsCall implements ICall {
             logi("callSessionHoldFailed :: session=" + session +
                     ", reasonInfo=" + reasonInfo);
 
-            synchronized (mLockObj) {
-                mHold = false;
-            }
-
             boolean isHoldForMerge = false;
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 if (mUpdateRequest == UPDATE_HOLD_MERGE) {
                     isHoldForMerge = true;
                 }
 
-                mUpdateRequest = UPDATE_NONE;
                 listener = mListener;
                 /// M: ALPS02027876. @{
                 /// Failed to hold a session, it means this session is still active.
-                /// So this flag should be also reset.
-                mHold = false;
+                /// So the hold flag is reset along with the update request.
+                transition(ImsCallStateMachine.EVENT_HOLD_FAILED, codeOf(reasonInfo));
                 /// @}
+                publishState();
             }
 
             if (listener != null) {
@@ -2311,6 +2599,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionHoldReceived(ImsCallSession session, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_HOLD_RECEIVED, 0);
             logi("callSessionHoldReceived :: session=" + session + "profile=" + profile);
 
             if (isTransientConferenceSession(session)) {
@@ -2322,9 +2611,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
+                publishState();
             }
 
             if (listener != null) {
@@ -2363,11 +2653,11 @@ public class ImsCall implements ICall {
             // the termination has not come yet.
 
             ImsCall.Listener listener;
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
-                mUpdateRequest = UPDATE_NONE;
-                mHold = false;
+                transition(ImsCallStateMachine.EVENT_RESUMED, 0);
+                publishState();
             }
 
             if (listener != null) {
@@ -2389,15 +2679,12 @@ public class ImsCall implements ICall {
                 return;
             }
 
-            synchronized(mLockObj) {
-                mHold = true;
-            }
-
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
-                mUpdateRequest = UPDATE_NONE;
+                transition(ImsCallStateMachine.EVENT_RESUME_FAILED, codeOf(reasonInfo));
+                publishState();
             }
 
             if (listener != null) {
@@ -2411,6 +2698,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionResumeReceived(ImsCallSession session, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_RESUME_RECEIVED, 0);
             logi("callSessionResumeReceived :: session=" + session + "profile=" + profile);
 
             if (isTransientConferenceSession(session)) {
@@ -2421,9 +2709,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
+                publishState();
             }
 
             if (listener != null) {
@@ -2438,6 +2727,7 @@ public class ImsCall implements ICall {
         @Override
         public void callSessionMergeStarted(ImsCallSession session,
                 ImsCallSession newSession, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_MERGE_STARTED, 0);
             logi("callSessionMergeStarted :: session=" + session + " newSession=" + newSession +
                     ", profile=" + profile);
 
@@ -2481,6 +2771,7 @@ public class ImsCall implements ICall {
          */
         @Override
         public void callSessionMergeComplete(ImsCallSession newSession) {
+            transition(ImsCallStateMachine.EVENT_MERGE_COMPLETE, 0);
             logi("callSessionMergeComplete :: newSession =" + newSession);
             if (!isMergeHost()) {
                 // Handles case 4
@@ -2498,11 +2789,12 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionMergeFailed(ImsCallSession session, ImsReasonInfo reasonInfo) {
+            transition(ImsCallStateMachine.EVENT_MERGE_FAILED, codeOf(reasonInfo));
             loge("callSessionMergeFailed :: session=" + session + "reasonInfo=" + reasonInfo);
 
             // Its possible that there could be threading issues with the other thread handling
             // the other call. This could affect our state.
-            synchronized (ImsCall.this) {
+            synchronized (mLockObj) {
                 // Let's tell our parent ImsCall that the merge has failed and we need to clean
                 // up any temporary, transient state.  Note this only gets called for an initial
                 // conference.  If a merge into an existing conference fails, the two sessions will
@@ -2519,6 +2811,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionUpdated(ImsCallSession session, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_UPDATED, 0);
             logi("callSessionUpdated :: session=" + session + " profile=" + profile);
 
             if (isTransientConferenceSession(session)) {
@@ -2529,9 +2822,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
+                publishState();
             }
 
             if (listener != null) {
@@ -2555,9 +2849,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
-                mUpdateRequest = UPDATE_NONE;
+                transition(ImsCallStateMachine.EVENT_UPDATE_FAILED, codeOf(reasonInfo));
+                publishState();
             }
 
             if (listener != null) {
@@ -2581,10 +2876,11 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mProposedCallProfile = profile;
-                mUpdateRequest = UPDATE_UNSPECIFIED;
+                transition(ImsCallStateMachine.EVENT_UPDATE_RECEIVED, 0);
+                publishState();
             }
 
             if (listener != null) {
@@ -2617,9 +2913,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
-                mUpdateRequest = UPDATE_NONE;
+                transition(ImsCallStateMachine.EVENT_CONFERENCE_EXTENDED, 0);
+                publishState();
             }
 
             if (listener != null) {
@@ -2644,9 +2941,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
-                mUpdateRequest = UPDATE_NONE;
+                transition(ImsCallStateMachine.EVENT_CONFERENCE_EXTEND_FAILED, codeOf(reasonInfo));
+                publishState();
             }
 
             if (listener != null) {
@@ -2661,6 +2959,7 @@ public class ImsCall implements ICall {
         @Override
         public void callSessionConferenceExtendReceived(ImsCallSession session,
                 ImsCallSession newSession, ImsCallProfile profile) {
+            transition(ImsCallStateMachine.EVENT_CONFERENCE_EXTEND_RECEIVED, 0);
             logi("callSessionConferenceExtendReceived :: newSession=" + newSession +
                     ", profile=" + profile);
 
@@ -2679,7 +2978,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2704,12 +3003,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 /// M: when merge call to a conference call @{
-                if (mIsConferenceMerging) {
-                    //updateCallGroup(ImsCall.this);
-                    mIsConferenceMerging = false;
-                }
+                //if (mIsConferenceMerging) updateCallGroup(ImsCall.this);
+                transition(ImsCallStateMachine.EVENT_INVITE_PARTICIPANTS_DELIVERED, 0);
                 /// @}
                 listener = mListener;
             }
@@ -2736,11 +3033,12 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
 
                 /// M: merge call to a conference call case @{
-                mIsConferenceMerging = false;
+                transition(ImsCallStateMachine.EVENT_INVITE_PARTICIPANTS_FAILED,
+                        codeOf(reasonInfo));
                 /// @}
             }
 
@@ -2755,6 +3053,7 @@ public class ImsCall implements ICall {
 
         @Override
         public void callSessionRemoveParticipantsRequestDelivered(ImsCallSession session) {
+            transition(ImsCallStateMachine.EVENT_REMOVE_PARTICIPANTS_DELIVERED, 0);
             logi("callSessionRemoveParticipantsRequestDelivered ::");
 
             if (isTransientConferenceSession(session)) {
@@ -2765,7 +3064,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2781,6 +3080,7 @@ public class ImsCall implements ICall {
         @Override
         public void callSessionRemoveParticipantsRequestFailed(ImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            transition(ImsCallStateMachine.EVENT_REMOVE_PARTICIPANTS_FAILED, codeOf(reasonInfo));
             loge("callSessionRemoveParticipantsRequestFailed :: reasonInfo=" + reasonInfo);
 
             if (isTransientConferenceSession(session)) {
@@ -2791,7 +3091,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2826,7 +3126,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2845,7 +3145,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2868,6 +3168,7 @@ public class ImsCall implements ICall {
         @Override
         public void callSessionMultipartyStateChanged(ImsCallSession session,
                 boolean isMultiParty) {
+            transition(ImsCallStateMachine.EVENT_MULTIPARTY_STATE_CHANGED, isMultiParty ? 1 : 0);
             if (VDBG) {
                 logi("callSessionMultipartyStateChanged isMultiParty: " + (isMultiParty ? "Y"
                         : "N"));
@@ -2875,7 +3176,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2896,7 +3197,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2919,7 +3220,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2947,7 +3248,7 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
             }
 
@@ -2969,9 +3270,10 @@ public class ImsCall implements ICall {
 
             ImsCall.Listener listener;
 
-            synchronized(ImsCall.this) {
+            synchronized(mLockObj) {
                 listener = mListener;
                 mCallProfile = profile;
+                publishState();
             }
 
             if (listener != null) {
@@ -2997,7 +3299,7 @@ public class ImsCall implements ICall {
     public void conferenceStateUpdated(ImsConferenceState state) {
         Listener listener;
 
-        synchronized(this) {
+        synchronized(mLockObj) {
             notifyConferenceStateUpdated(state);
             listener = mListener;
         }
@@ -3018,24 +3320,7 @@ public class ImsCall implements ICall {
      * @return The string representation.
      */
     private String updateRequestToString(int updateRequest) {
-        switch (updateRequest) {
-            case UPDATE_NONE:
-                return "NONE";
-            case UPDATE_HOLD:
-                return "HOLD";
-            case UPDATE_HOLD_MERGE:
-                return "HOLD_MERGE";
-            case UPDATE_RESUME:
-                return "RESUME";
-            case UPDATE_MERGE:
-                return "MERGE";
-            case UPDATE_EXTEND_TO_CONFERENCE:
-                return "EXTEND_TO_CONFERENCE";
-            case UPDATE_UNSPECIFIED:
-                return "UNSPECIFIED";
-            default:
-                return "UNKNOWN";
-        }
+        return ImsCallStateMachine.updateRequestToString(updateRequest);
     }
 
     /**
@@ -3047,21 +3332,22 @@ public class ImsCall implements ICall {
             logi("clearMergeInfo :: clearing all merge info");
         }
 
-        // First clear out the merge partner then clear ourselves out.
+        // First clear out the merge partner then clear ourselves out. The transitions clear
+        // the role bits of the state before the references are cleared.
         if (mMergeHost != null) {
+            mMergeHost.transition(ImsCallStateMachine.EVENT_MERGE_CLEARED, 0);
             mMergeHost.mMergePeer = null;
-            mMergeHost.mUpdateRequest = UPDATE_NONE;
-            mMergeHost.mCallSessionMergePending = false;
+            mMergeHost.publishState();
         }
         if (mMergePeer != null) {
+            mMergePeer.transition(ImsCallStateMachine.EVENT_MERGE_CLEARED, 0);
             mMergePeer.mMergeHost = null;
-            mMergePeer.mUpdateRequest = UPDATE_NONE;
-            mMergePeer.mCallSessionMergePending = false;
+            mMergePeer.publishState();
         }
+        transition(ImsCallStateMachine.EVENT_MERGE_CLEARED, 0);
         mMergeHost = null;
         mMergePeer = null;
-        mUpdateRequest = UPDATE_NONE;
-        mCallSessionMergePending = false;
+        publishState();
     }
 
     /**
@@ -3071,9 +3357,11 @@ public class ImsCall implements ICall {
      * @param mergePeer The peer call to be merged into this one.
      */
     private void setMergePeer(ImsCall mergePeer) {
+        transition(ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_HOST);
         mMergePeer = mergePeer;
         mMergeHost = null;
 
+        mergePeer.transition(ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_PEER);
         mergePeer.mMergeHost = ImsCall.this;
         mergePeer.mMergePeer = null;
     }
@@ -3085,9 +3373,11 @@ public class ImsCall implements ICall {
      * @param mergeHost The merge host this call will be merged into.
      */
     public void setMergeHost(ImsCall mergeHost) {
+        transition(ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_PEER);
         mMergeHost = mergeHost;
         mMergePeer = null;
 
+        mergeHost.transition(ImsCallStateMachine.EVENT_MERGE_ROLE, ImsCallStateMachine.ROLE_HOST);
         mergeHost.mMergeHost = null;
         mergeHost.mMergePeer = ImsCall.this;
     }
@@ -3135,7 +3425,7 @@ public class ImsCall implements ICall {
      *      {@code false} otherwise.
      */
     private void setCallSessionMergePending(boolean callSessionMergePending) {
-        mCallSessionMergePending = callSessionMergePending;
+        transition(ImsCallStateMachine.EVENT_MERGE_PENDING, callSessionMergePending ? 1 : 0);
     }
 
     /**
@@ -3155,7 +3445,7 @@ public class ImsCall implements ICall {
     private boolean shouldProcessConferenceResult() {
         boolean areMergeTriggersDone = false;
 
-        synchronized (ImsCall.this) {
+        synchronized (mLockObj) {
             // if there is a merge going on, then the merge host/peer relationships should have been
             // set up.  This works for both the initial conference or merging a call into an
             // existing conference.
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import android.os.SystemClock;
+
+/**
+ * Latency metrics of the call setup, from {@link ImsManager#makeCall} or
+ * {@link ImsManager#takeCall} to {@link ImsCall.Listener#onCallStarted}.
+ *
+ * Each {@link ImsCall} records the time of the setup phases in a trace
+ * allocated with the call. When the call is started, the intervals between
+ * the phases are added to process-wide histograms with logarithmic buckets
+ * of milliseconds: bucket 0 counts the intervals below 1 ms, and bucket n
+ * the intervals in [2^(n-1), 2^n) ms. The last bucket has no upper bound.
+ *
+ * @hide
+ */
+public final class ImsCallSetupMetrics {
+    /**
+     * Measured intervals
+     */
+    // ImsManager.createCallProfile duration
+    public static final int LATENCY_CREATE_CALL_PROFILE = 0;
+    // From ImsManager.makeCall to the creation of the call session
+    public static final int LATENCY_CREATE_CALL_SESSION = 1;
+    // From the creation of the call session to the return of ImsCall.start
+    public static final int LATENCY_START = 2;
+    // From ImsCall.start to callSessionProgressing
+    public static final int LATENCY_PROGRESSING = 3;
+    // From callSessionProgressing, or ImsCall.start if there is none, to callSessionStarted
+    public static final int LATENCY_STARTED = 4;
+    // From ImsManager.makeCall to callSessionStarted
+    public static final int LATENCY_POST_DIAL = 5;
+    // From ImsManager.takeCall to the attachment of the call session
+    public static final int LATENCY_TAKE_CALL = 6;
+    // From ImsCall.accept to callSessionStarted
+    public static final int LATENCY_ANSWER = 7;
+
+    private static final int LATENCY_COUNT = 8;
+
+    private static final String[] LATENCY_NAMES = {
+        "createCallProfile", "createCallSession", "start", "progressing", "started",
+        "postDial", "takeCall", "answer"
+    };
+
+    /**
+     * Number of histogram buckets
+     */
+    public static final int BUCKET_COUNT = 16;
+
+    /**
+     * Setup phases recorded in the trace of a call
+     */
+    static final int PHASE_MAKE_CALL = 0;
+    static final int PHASE_TAKE_CALL = 1;
+    // Call session created (outgoing) or attached (incoming)
+    static final int PHASE_SESSION = 2;
+    static final int PHASE_START = 3;
+    static final int PHASE_ACCEPT = 4;
+    static final int PHASE_PROGRESSING = 5;
+    static final int PHASE_STARTED = 6;
+
+    private static final int PHASE_COUNT = 7;
+
+    /**
+     * Setup trace of a call, allocated with the call. Only the first
+     * occurrence of a phase is recorded.
+     */
+    static final class Trace {
+        private final long[] mTimes = new long[PHASE_COUNT];
+        private boolean mDone = false;
+
+        /**
+         * Records a phase now
+         */
+        void mark(int phase) {
+            mark(phase, now());
+        }
+
+        /**
+         * Records a phase at the given time
+         *
+         * @param phase the phase
+         * @param time the time, from {@link ImsCallSetupMetrics#now}
+         */
+        synchronized void mark(int phase, long time) {
+            if (!mDone && mTimes[phase] == 0) {
+                mTimes[phase] = time;
+            }
+        }
+
+        /**
+         * Records the start of the call and reports the trace
+         */
+        void started() {
+            synchronized (this) {
+                if (mDone) {
+                    return;
+                }
+                mTimes[PHASE_STARTED] = now();
+                mDone = true;
+            }
+            getInstance().report(mTimes);
+        }
+
+        /**
+         * Ends the trace without reporting it, when the setup fails
+         */
+        synchronized void discard() {
+            mDone = true;
+        }
+    }
+
+    private static final ImsCallSetupMetrics sInstance = new ImsCallSetupMetrics();
+
+    private final long[][] mBuckets = new long[LATENCY_COUNT][BUCKET_COUNT];
+    private final long[] mCounts = new long[LATENCY_COUNT];
+    private final long[] mSums = new long[LATENCY_COUNT];
+    private final long[] mMax = new long[LATENCY_COUNT];
+
+    /**
+     * Returns the metrics of the process
+     */
+    public static ImsCallSetupMetrics getInstance() {
+        return sInstance;
+    }
+
+    private ImsCallSetupMetrics() {
+    }
+
+    /**
+     * Returns the monotonic time used by the traces, in nanoseconds
+     */
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket
+     *
+     * @param bucket the bucket index
+     * @return the bound in milliseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return (bucket >= BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << bucket);
+    }
+
+    /**
+     * Returns a copy of the histogram of an interval
+     *
+     * @param latency the interval, one of the LATENCY_* constants
+     * @return the count of each bucket
+     */
+    public synchronized long[] getHistogram(int latency) {
+        return mBuckets[latency].clone();
+    }
+
+    /**
+     * Returns the number of measures of an interval
+     */
+    public synchronized long getCount(int latency) {
+        return mCounts[latency];
+    }
+
+    /**
+     * Returns the mean of an interval in milliseconds, 0 if not measured
+     */
+    public synchronized long getMean(int latency) {
+        return (mCounts[latency] > 0) ? (mSums[latency] / mCounts[latency]) : 0;
+    }
+
+    /**
+     * Returns the maximum of an interval in milliseconds
+     */
+    public synchronized long getMax(int latency) {
+        return mMax[latency];
+    }
+
+    /**
+     * Returns an upper estimate of a percentile of an interval, which is the
+     * upper bound of the bucket containing the percentile
+     *
+     * @param latency the interval, one of the LATENCY_* constants
+     * @param percentile the percentile, from 1 to 100
+     * @return the estimate in milliseconds, 0 if not measured
+     */
+    public synchronized long getPercentile(int latency, int percentile) {
+        long count = mCounts[latency];
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets[latency][i];
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), mMax[latency]);
+            }
+        }
+        return mMax[latency];
+    }
+
+    /**
+     * Clears all the histograms
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < LATENCY_COUNT; i++) {
+            Arrays.fill(mBuckets[i], 0);
+            mCounts[i] = 0;
+            mSums[i] = 0;
+            mMax[i] = 0;
+        }
+    }
+
+    /**
+     * Dumps the histograms
+     */
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("ImsCallSetupMetrics (ms):");
+        for (int i = 0; i < LATENCY_COUNT; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            pw.print("  " + LATENCY_NAMES[i] + ": count=" + mCounts[i]
+                    + " mean=" + getMean(i) + " p50=" + getPercentile(i, 50)
+                    + " p95=" + getPercentile(i, 95) + " max=" + mMax[i] + " buckets=[");
+            for (int j = 0; j < BUCKET_COUNT; j++) {
+                pw.print((j > 0 ? "," : "") + mBuckets[i][j]);
+            }
+            pw.println("]");
+        }
+    }
+
+    /**
+     * Adds the duration of an operation started at the given time
+     *
+     * @param latency the interval, one of the LATENCY_* constants
+     * @param start the start time, from {@link #now}
+     */
+    void record(int latency, long start) {
+        add(latency, now() - start);
+    }
+
+    private void report(long[] times) {
+        long started = times[PHASE_STARTED];
+        if (times[PHASE_MAKE_CALL] != 0) {
+            long start = times[PHASE_START];
+            long progressing = times[PHASE_PROGRESSING];
+            addInterval(LATENCY_CREATE_CALL_SESSION, times[PHASE_MAKE_CALL], times[PHASE_SESSION]);
+            addInterval(LATENCY_START, times[PHASE_SESSION], start);
+            addInterval(LATENCY_PROGRESSING, start, progressing);
+            addInterval(LATENCY_STARTED, (progressing != 0) ? progressing : start, started);
+            addInterval(LATENCY_POST_DIAL, times[PHASE_MAKE_CALL], started);
+        } else if (times[PHASE_TAKE_CALL] != 0) {
+            addInterval(LATENCY_TAKE_CALL, times[PHASE_TAKE_CALL], times[PHASE_SESSION]);
+            addInterval(LATENCY_ANSWER, times[PHASE_ACCEPT], started);
+        }
+    }
+
+    private void addInterval(int latency, long from, long to) {
+        if (from != 0 && to >= from) {
+            add(latency, to - from);
+        }
+    }
+
+    private synchronized void add(int latency, long nanos) {
+        long ms = nanos / 1000000L;
+        int bucket = (ms <= 0) ? 0 : (64 - Long.numberOfLeadingZeros(ms));
+        mBuckets[latency][Math.min(bucket, BUCKET_COUNT - 1)]++;
+        mCounts[latency]++;
+        mSums[latency] += ms;
+        if (ms > mMax[latency]) {
+            mMax[latency] = ms;
+        }
+    }
+}
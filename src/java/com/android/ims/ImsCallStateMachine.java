@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims;
+
+import java.io.PrintWriter;
+
+/**
+ * Transitions of the update request and merge state of an {@link ImsCall}.
+ *
+ * The state is encoded in an int: the low bits hold the pending update
+ * request (UPDATE_*), the other bits the STATE_* flags. {@link #next} is the
+ * only place where the state changes: {@link ImsCall} feeds every event with
+ * its input to {@link #fire}, which applies {@link #next} and records the
+ * transition in a bounded log. Since {@link #next} is a pure function of the
+ * state, the event and its input, a log can be replayed with {@link #replay}.
+ *
+ * The merge role bits (STATE_MERGE_HOST, STATE_MERGE_PEER) mirror the merge
+ * partner references held by the call, which are set along with the
+ * EVENT_MERGE_ROLE and EVENT_MERGE_CLEARED events.
+ *
+ * This class has no platform dependency.
+ *
+ * @hide
+ */
+public final class ImsCallStateMachine {
+    /**
+     * Update requests, in the low bits of the state
+     */
+    public static final int UPDATE_NONE = 0;
+    public static final int UPDATE_HOLD = 1;
+    public static final int UPDATE_HOLD_MERGE = 2;
+    public static final int UPDATE_RESUME = 3;
+    public static final int UPDATE_MERGE = 4;
+    public static final int UPDATE_EXTEND_TO_CONFERENCE = 5;
+    public static final int UPDATE_UNSPECIFIED = 6;
+
+    /**
+     * State flags
+     */
+    public static final int STATE_UPDATE_MASK = 0x0f;
+    public static final int STATE_IN_CALL = 1 << 4;
+    public static final int STATE_HOLD = 1 << 5;
+    public static final int STATE_MERGE_HOST = 1 << 6;
+    public static final int STATE_MERGE_PEER = 1 << 7;
+    public static final int STATE_MERGE_PENDING = 1 << 8;
+    public static final int STATE_SESSION_END_DURING_MERGE = 1 << 9;
+    public static final int STATE_CONFERENCE_MERGING = 1 << 10;
+    public static final int STATE_TERMINATION_PENDING = 1 << 11;
+    public static final int STATE_MERGED = 1 << 12;
+
+    /**
+     * Requests of the application. The input of EVENT_ACCEPT and EVENT_UPDATE
+     * is the call type, of EVENT_REJECT and EVENT_TERMINATE the reason, of
+     * EVENT_MERGE one of the MERGE_* constants.
+     */
+    public static final int EVENT_START = 0;
+    public static final int EVENT_ACCEPT = 1;
+    public static final int EVENT_REJECT = 2;
+    public static final int EVENT_TERMINATE = 3;
+    public static final int EVENT_HOLD = 4;
+    public static final int EVENT_RESUME = 5;
+    public static final int EVENT_MERGE = 6;
+    public static final int EVENT_UPDATE = 7;
+    public static final int EVENT_EXTEND_TO_CONFERENCE = 8;
+    public static final int EVENT_INVITE_PARTICIPANTS = 9;
+    public static final int EVENT_REMOVE_PARTICIPANTS = 10;
+
+    /**
+     * Callbacks of the call session. The input of the failure and termination
+     * events is the code of the ImsReasonInfo, of EVENT_MULTIPARTY_STATE_CHANGED
+     * 1 if the session became multiparty.
+     */
+    public static final int EVENT_PROGRESSING = 11;
+    public static final int EVENT_STARTED = 12;
+    public static final int EVENT_START_FAILED = 13;
+    public static final int EVENT_TERMINATED = 14;
+    public static final int EVENT_HELD = 15;
+    public static final int EVENT_HOLD_FAILED = 16;
+    public static final int EVENT_HOLD_RECEIVED = 17;
+    public static final int EVENT_RESUMED = 18;
+    public static final int EVENT_RESUME_FAILED = 19;
+    public static final int EVENT_RESUME_RECEIVED = 20;
+    public static final int EVENT_MERGE_STARTED = 21;
+    public static final int EVENT_MERGE_COMPLETE = 22;
+    public static final int EVENT_MERGE_FAILED = 23;
+    public static final int EVENT_UPDATED = 24;
+    public static final int EVENT_UPDATE_FAILED = 25;
+    public static final int EVENT_UPDATE_RECEIVED = 26;
+    public static final int EVENT_CONFERENCE_EXTENDED = 27;
+    public static final int EVENT_CONFERENCE_EXTEND_FAILED = 28;
+    public static final int EVENT_CONFERENCE_EXTEND_RECEIVED = 29;
+    public static final int EVENT_INVITE_PARTICIPANTS_DELIVERED = 30;
+    public static final int EVENT_INVITE_PARTICIPANTS_FAILED = 31;
+    public static final int EVENT_REMOVE_PARTICIPANTS_DELIVERED = 32;
+    public static final int EVENT_REMOVE_PARTICIPANTS_FAILED = 33;
+    public static final int EVENT_MULTIPARTY_STATE_CHANGED = 34;
+
+    /**
+     * Internal transitions of the call and of its merge partner. The input of
+     * EVENT_MERGE_PENDING, EVENT_SESSION_END_DURING_MERGE and EVENT_MERGED is
+     * 1 to set the flag and 0 to clear it, of EVENT_MERGE_ROLE one of the
+     * ROLE_* constants, of EVENT_MERGE_RESULT one of the RESULT_* constants.
+     */
+    public static final int EVENT_CLEAR = 35;
+    public static final int EVENT_CONVERSATION_MODE = 36;
+    public static final int EVENT_MERGE_PENDING = 37;
+    public static final int EVENT_MERGE_ROLE = 38;
+    public static final int EVENT_MERGE_CLEARED = 39;
+    public static final int EVENT_SESSION_END_DURING_MERGE = 40;
+    public static final int EVENT_MERGED = 41;
+    public static final int EVENT_MERGE_RESULT = 42;
+
+    private static final String[] EVENT_NAMES = {
+        "start", "accept", "reject", "terminate", "hold", "resume", "merge", "update",
+        "extendToConference", "inviteParticipants", "removeParticipants",
+        "progressing", "started", "startFailed", "terminated", "held", "holdFailed",
+        "holdReceived", "resumed", "resumeFailed", "resumeReceived", "mergeStarted",
+        "mergeComplete", "mergeFailed", "updated", "updateFailed", "updateReceived",
+        "conferenceExtended", "conferenceExtendFailed", "conferenceExtendReceived",
+        "inviteParticipantsDelivered", "inviteParticipantsFailed",
+        "removeParticipantsDelivered", "removeParticipantsFailed", "multipartyStateChanged",
+        "clear", "conversationMode", "mergePending", "mergeRole", "mergeCleared",
+        "sessionEndDuringMerge", "merged", "mergeResult"
+    };
+
+    /**
+     * Inputs of EVENT_MERGE
+     */
+    // A conference already exists: the sessions are merged without an update request
+    public static final int MERGE_INTO_CONFERENCE = 0;
+    // The first two calls of a new conference are merged
+    public static final int MERGE_NEW_CONFERENCE = 1;
+    // The call is held first, the merge is requested when the hold is confirmed
+    public static final int MERGE_HOLD_FIRST = 2;
+
+    /**
+     * Inputs of EVENT_MERGE_ROLE
+     */
+    public static final int ROLE_NONE = 0;
+    public static final int ROLE_HOST = 1;
+    public static final int ROLE_PEER = 2;
+
+    /**
+     * Inputs of EVENT_MERGE_RESULT
+     */
+    // The call keeps its hold state
+    public static final int RESULT_UNCHANGED = 0;
+    // The call carries the conference
+    public static final int RESULT_ACTIVE = 1;
+    // The call was left out of the conference and stays held
+    public static final int RESULT_HELD = 2;
+
+    // Transition log: ring of the last transitions, oldest at mFirst
+    private final int[] mEvents;
+    private final int[] mInputs;
+    private final int[] mOldStates;
+    private final int[] mNewStates;
+    private final long[] mTimes;
+    private int mFirst = 0;
+    private int mCount = 0;
+
+    /**
+     * Creates a state machine
+     *
+     * @param logSize the number of transitions kept in the log
+     */
+    public ImsCallStateMachine(int logSize) {
+        mEvents = new int[logSize];
+        mInputs = new int[logSize];
+        mOldStates = new int[logSize];
+        mNewStates = new int[logSize];
+        mTimes = new long[logSize];
+    }
+
+    /**
+     * Returns the state following an event
+     *
+     * @param state the current state
+     * @param event the event, one of the EVENT_* constants
+     * @param input the input of the event
+     * @return the new state
+     */
+    public static int next(int state, int event, int input) {
+        int update = state & STATE_UPDATE_MASK;
+        switch (event) {
+            case EVENT_ACCEPT:
+            case EVENT_REJECT:
+                // Answers a call update received from the other party
+                if ((state & STATE_IN_CALL) != 0 && update == UPDATE_UNSPECIFIED) {
+                    return withUpdate(state, UPDATE_NONE);
+                }
+                return state;
+            case EVENT_TERMINATE:
+                return (state & ~(STATE_HOLD | STATE_IN_CALL)) | STATE_TERMINATION_PENDING;
+            case EVENT_HOLD:
+                // The call is considered held until the hold fails
+                return withUpdate(state | STATE_HOLD, UPDATE_HOLD);
+            case EVENT_RESUME:
+                // The call is considered held until the resume is confirmed
+                return withUpdate(state, UPDATE_RESUME);
+            case EVENT_MERGE:
+                if (input == MERGE_HOLD_FIRST) {
+                    return withUpdate(state | STATE_HOLD, UPDATE_HOLD_MERGE);
+                } else if (input == MERGE_NEW_CONFERENCE) {
+                    return withUpdate(state, UPDATE_MERGE);
+                }
+                return state;
+            case EVENT_UPDATE:
+            case EVENT_UPDATE_RECEIVED:
+                return withUpdate(state, UPDATE_UNSPECIFIED);
+            case EVENT_EXTEND_TO_CONFERENCE:
+                return withUpdate(state, UPDATE_EXTEND_TO_CONFERENCE);
+            case EVENT_HELD:
+                // A hold made to set the stage for a merge is followed by the merge
+                if (update == UPDATE_HOLD_MERGE) {
+                    return withUpdate(state, UPDATE_MERGE);
+                }
+                return withUpdate(state | STATE_HOLD, UPDATE_NONE);
+            case EVENT_HOLD_FAILED:
+            case EVENT_RESUMED:
+                return withUpdate(state & ~STATE_HOLD, UPDATE_NONE);
+            case EVENT_RESUME_FAILED:
+                return withUpdate(state | STATE_HOLD, UPDATE_NONE);
+            case EVENT_UPDATE_FAILED:
+            case EVENT_CONFERENCE_EXTENDED:
+            case EVENT_CONFERENCE_EXTEND_FAILED:
+                return withUpdate(state, UPDATE_NONE);
+            case EVENT_INVITE_PARTICIPANTS_DELIVERED:
+            case EVENT_INVITE_PARTICIPANTS_FAILED:
+                return state & ~STATE_CONFERENCE_MERGING;
+            case EVENT_CLEAR:
+                return withUpdate(state & ~(STATE_IN_CALL | STATE_HOLD), UPDATE_NONE);
+            case EVENT_CONVERSATION_MODE:
+                if ((state & STATE_IN_CALL) != 0) {
+                    return withUpdate(state & ~STATE_HOLD, UPDATE_NONE);
+                }
+                return state;
+            case EVENT_MERGE_PENDING:
+                return setFlag(state, STATE_MERGE_PENDING, input != 0);
+            case EVENT_MERGE_ROLE:
+                state &= ~(STATE_MERGE_HOST | STATE_MERGE_PEER);
+                if (input == ROLE_HOST) {
+                    return state | STATE_MERGE_HOST;
+                } else if (input == ROLE_PEER) {
+                    return state | STATE_MERGE_PEER;
+                }
+                return state;
+            case EVENT_MERGE_CLEARED:
+                return withUpdate(state
+                        & ~(STATE_MERGE_HOST | STATE_MERGE_PEER | STATE_MERGE_PENDING),
+                        UPDATE_NONE);
+            case EVENT_SESSION_END_DURING_MERGE:
+                return setFlag(state, STATE_SESSION_END_DURING_MERGE, input != 0);
+            case EVENT_MERGED:
+                return setFlag(state, STATE_MERGED, input != 0);
+            case EVENT_MERGE_RESULT:
+                if (input == RESULT_ACTIVE) {
+                    return state & ~STATE_HOLD;
+                } else if (input == RESULT_HELD) {
+                    return state | STATE_HOLD;
+                }
+                return state;
+            default:
+                // The other events are only recorded
+                return state;
+        }
+    }
+
+    private static int withUpdate(int state, int update) {
+        return (state & ~STATE_UPDATE_MASK) | update;
+    }
+
+    private static int setFlag(int state, int flag, boolean set) {
+        return set ? (state | flag) : (state & ~flag);
+    }
+
+    /**
+     * Applies an event and records the transition in the log
+     *
+     * @param state the current state
+     * @param event the event, one of the EVENT_* constants
+     * @param input the input of the event
+     * @param time the time of the event
+     * @return the new state
+     */
+    public synchronized int fire(int state, int event, int input, long time) {
+        int newState = next(state, event, input);
+        int index = (mFirst + mCount) % mEvents.length;
+        mEvents[index] = event;
+        mInputs[index] = input;
+        mOldStates[index] = state;
+        mNewStates[index] = newState;
+        mTimes[index] = time;
+        if (mCount < mEvents.length) {
+            mCount++;
+        } else {
+            mFirst = (mFirst + 1) % mEvents.length;
+        }
+        return newState;
+    }
+
+    /**
+     * Copies the log, oldest transition first. Each array must hold at least
+     * the size of the log.
+     *
+     * @return the number of transitions copied
+     */
+    public synchronized int getLog(int[] events, int[] inputs, int[] oldStates,
+            int[] newStates) {
+        for (int i = 0; i < mCount; i++) {
+            int index = (mFirst + i) % mEvents.length;
+            events[i] = mEvents[index];
+            inputs[i] = mInputs[index];
+            oldStates[i] = mOldStates[index];
+            newStates[i] = mNewStates[index];
+        }
+        return mCount;
+    }
+
+    /**
+     * Replays a log, checking every new state against {@link #next}. The old
+     * state of each transition is checked against the previous new state, so a
+     * state change made without the state machine is reported as well.
+     *
+     * @return the index of the first transition that does not match, or -1
+     */
+    public static int replay(int[] events, int[] inputs, int[] oldStates, int[] newStates,
+            int count) {
+        int state = (count > 0) ? oldStates[0] : 0;
+        for (int i = 0; i < count; i++) {
+            if (oldStates[i] != state) {
+                return i;
+            }
+            state = next(state, events[i], inputs[i]);
+            if (newStates[i] != state) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Dumps the log, oldest transition first, as
+     * {@code time event(input): old state -> new state}.
+     */
+    public synchronized void dump(PrintWriter pw) {
+        for (int i = 0; i < mCount; i++) {
+            int index = (mFirst + i) % mEvents.length;
+            pw.println("  " + mTimes[index] + " " + eventToString(mEvents[index])
+                    + "(" + mInputs[index] + "): " + stateToString(mOldStates[index])
+                    + (mNewStates[index] != mOldStates[index]
+                            ? " -> " + stateToString(mNewStates[index]) : ""));
+        }
+    }
+
+    /**
+     * Provides a human-readable string representation of an event
+     */
+    public static String eventToString(int event) {
+        return (event >= 0 && event < EVENT_NAMES.length) ? EVENT_NAMES[event] : "UNKNOWN";
+    }
+
+    /**
+     * Provides a human-readable string representation of an update request
+     */
+    public static String updateRequestToString(int updateRequest) {
+        switch (updateRequest) {
+            case UPDATE_NONE:
+                return "NONE";
+            case UPDATE_HOLD:
+                return "HOLD";
+            case UPDATE_HOLD_MERGE:
+                return "HOLD_MERGE";
+            case UPDATE_RESUME:
+                return "RESUME";
+            case UPDATE_MERGE:
+                return "MERGE";
+            case UPDATE_EXTEND_TO_CONFERENCE:
+                return "EXTEND_TO_CONFERENCE";
+            case UPDATE_UNSPECIFIED:
+                return "UNSPECIFIED";
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    /**
+     * Provides a human-readable string representation of a state
+     */
+    public static String stateToString(int state) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(updateRequestToString(state & STATE_UPDATE_MASK));
+        if ((state & STATE_IN_CALL) != 0) sb.append("|inCall");
+        if ((state & STATE_HOLD) != 0) sb.append("|hold");
+        if ((state & STATE_MERGE_HOST) != 0) sb.append("|mergeHost");
+        if ((state & STATE_MERGE_PEER) != 0) sb.append("|mergePeer");
+        if ((state & STATE_MERGE_PENDING) != 0) sb.append("|mergePending");
+        if ((state & STATE_SESSION_END_DURING_MERGE) != 0) sb.append("|buriedTerm");
+        if ((state & STATE_CONFERENCE_MERGING) != 0) sb.append("|confMerging");
+        if ((state & STATE_TERMINATION_PENDING) != 0) sb.append("|termPending");
+        if ((state & STATE_MERGED) != 0) sb.append("|merged");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ims;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Resources;
+import android.database.ContentObserver;
+import android.os.PersistableBundle;
+import android.provider.Settings;
+import android.telecom.TelecomManager;
+import android.telephony.CarrierConfigManager;
+import android.telephony.Rlog;
+
+import com.android.internal.telephony.TelephonyIntents;
+
+/**
+ * Cache of the configuration read by the static feature checks of
+ * {@link ImsManager}.
+ *
+ * The carrier configuration of the default subscription is fetched once,
+ * together with the device capabilities, and dropped when the carrier
+ * configuration or the default subscription changes. The user settings are
+ * read once and dropped when the settings provider notifies a change, or
+ * when they are written through {@link ImsManager}.
+ *
+ * The debug properties overriding the platform configuration are not
+ * cached, so that they still take effect without a restart.
+ *
+ * @hide
+ */
+final class ImsFeatureCache {
+    private static final String TAG = "ImsFeatureCache";
+    private static final boolean DBG = true;
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static ImsFeatureCache sInstance = null;
+
+    /**
+     * Platform configuration of a subscription
+     */
+    private static final class Platform {
+        final PersistableBundle config;
+        final boolean volteAvailable;
+        final boolean vtAvailable;
+        final boolean wfcAvailable;
+        final boolean ttyOnVolteSupported;
+
+        Platform(Resources res, PersistableBundle config) {
+            this.config = config;
+            volteAvailable = res.getBoolean(
+                    com.android.internal.R.bool.config_device_volte_available)
+                    && config.getBoolean(CarrierConfigManager.KEY_CARRIER_VOLTE_AVAILABLE_BOOL);
+            vtAvailable = res.getBoolean(
+                    com.android.internal.R.bool.config_device_vt_available)
+                    && config.getBoolean(CarrierConfigManager.KEY_CARRIER_VT_AVAILABLE_BOOL);
+            wfcAvailable = res.getBoolean(
+                    com.android.internal.R.bool.config_device_wfc_ims_available)
+                    && config.getBoolean(CarrierConfigManager.KEY_CARRIER_WFC_IMS_AVAILABLE_BOOL);
+            ttyOnVolteSupported = config.getBoolean(
+                    CarrierConfigManager.KEY_CARRIER_VOLTE_TTY_SUPPORTED_BOOL);
+        }
+    }
+
+    /**
+     * Integer setting, read once and dropped on change
+     */
+    private final class Setting extends ContentObserver {
+        private final String mName;
+        private final boolean mSecure;
+        private final int mDefault;
+        private volatile int mValue = UNKNOWN;
+
+        // Incremented when the value is dropped, so that a value read before
+        // is not kept
+        private int mGeneration = 0;
+
+        Setting(String name, boolean secure, int defaultValue) {
+            super(null);
+            mName = name;
+            mSecure = secure;
+            mDefault = defaultValue;
+            mContext.getContentResolver().registerContentObserver(secure
+                    ? Settings.Secure.getUriFor(name)
+                    : Settings.Global.getUriFor(name), false, this);
+        }
+
+        int get() {
+            int value = mValue;
+            if (value != UNKNOWN) {
+                return value;
+            }
+            int generation;
+            synchronized (this) {
+                generation = mGeneration;
+            }
+            // Read outside the lock, so that the setters running on the main
+            // thread don't wait for the settings provider
+            ContentResolver cr = mContext.getContentResolver();
+            value = mSecure
+                    ? Settings.Secure.getInt(cr, mName, mDefault)
+                    : Settings.Global.getInt(cr, mName, mDefault);
+            synchronized (this) {
+                // Not kept if the setting has changed during the read
+                if (generation == mGeneration) {
+                    mValue = value;
+                }
+            }
+            return value;
+        }
+
+        synchronized void invalidate() {
+            mValue = UNKNOWN;
+            mGeneration++;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    }
+
+    private final Context mContext;
+
+    private final Object mLock = new Object();
+
+    // Platform configuration of the default subscription, null when it must be loaded again
+    private volatile Platform mPlatform = null;
+
+    // Incremented when the platform configuration is dropped, so that a
+    // configuration loaded before is not published
+    private int mPlatformGeneration = 0;
+
+    private final Setting mEnhanced4gMode;
+    private final Setting mWfcMode;
+    private final Setting mTtyMode;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (DBG) log("onReceive: " + intent.getAction());
+            invalidatePlatform();
+        }
+    };
+
+    /**
+     * Returns the cache of the process
+     */
+    static synchronized ImsFeatureCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new ImsFeatureCache(appContext != null ? appContext : context);
+        }
+        return sInstance;
+    }
+
+    private ImsFeatureCache(Context context) {
+        mContext = context;
+
+        mEnhanced4gMode = new Setting(Settings.Global.ENHANCED_4G_MODE_ENABLED, false,
+                ImsConfig.FeatureValueConstants.ON);
+        mWfcMode = new Setting(Settings.Global.WFC_IMS_MODE, false,
+                ImsConfig.WfcModeFeatureValueConstants.WIFI_PREFERRED);
+        mTtyMode = new Setting(Settings.Secure.PREFERRED_TTY_MODE, true,
+                TelecomManager.TTY_MODE_OFF);
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED);
+        filter.addAction(TelephonyIntents.ACTION_DEFAULT_SUBSCRIPTION_CHANGED);
+        filter.addAction(TelephonyIntents.ACTION_DEFAULT_VOICE_SUBSCRIPTION_CHANGED);
+        mContext.registerReceiver(mReceiver, filter);
+    }
+
+    boolean isVolteAvailable() {
+        return getPlatform().volteAvailable;
+    }
+
+    boolean isVtAvailable() {
+        return getPlatform().vtAvailable;
+    }
+
+    boolean isWfcAvailable() {
+        return getPlatform().wfcAvailable;
+    }
+
+    boolean isTtyOnVolteSupported() {
+        return getPlatform().ttyOnVolteSupported;
+    }
+
+    /**
+     * Returns a boolean of the carrier configuration of the default subscription
+     *
+     * @param key config key defined in CarrierConfigManager
+     */
+    boolean getBooleanCarrierConfig(String key) {
+        return getPlatform().config.getBoolean(key);
+    }
+
+    int getEnhanced4gMode() {
+        return mEnhanced4gMode.get();
+    }
+
+    int getWfcMode() {
+        return mWfcMode.get();
+    }
+
+    int getTtyMode() {
+        return mTtyMode.get();
+    }
+
+    /**
+     * Drops the cached settings, to be called after a setting is written so
+     * that it is read again before the change is notified
+     */
+    void invalidateSettings() {
+        mEnhanced4gMode.invalidate();
+        mWfcMode.invalidate();
+        mTtyMode.invalidate();
+    }
+
+    private void invalidatePlatform() {
+        synchronized (mLock) {
+            mPlatform = null;
+            mPlatformGeneration++;
+        }
+    }
+
+    private Platform getPlatform() {
+        Platform platform = mPlatform;
+        if (platform != null) {
+            return platform;
+        }
+        int generation;
+        synchronized (mLock) {
+            generation = mPlatformGeneration;
+        }
+        // Loaded outside the lock, so that the receiver running on the main
+        // thread doesn't wait for the carrier config service
+        CarrierConfigManager configManager = (CarrierConfigManager) mContext.getSystemService(
+                Context.CARRIER_CONFIG_SERVICE);
+        PersistableBundle b = null;
+        if (configManager != null) {
+            b = configManager.getConfig();
+        }
+        if (b == null) {
+            // Use the static default defined in CarrierConfigManager, without
+            // keeping it, until the carrier config service is available
+            return new Platform(mContext.getResources(),
+                    CarrierConfigManager.getDefaultConfig());
+        }
+        platform = new Platform(mContext.getResources(), b);
+        synchronized (mLock) {
+            // Not kept if the configuration has changed during the load
+            if (generation == mPlatformGeneration) {
+                mPlatform = platform;
+            }
+        }
+        if (DBG) log("getPlatform: volte=" + platform.volteAvailable
+                + " vt=" + platform.vtAvailable + " wfc=" + platform.wfcAvailable);
+        return platform;
+    }
+
+    private static void log(String s) {
+        Rlog.d(TAG, s);
+    }
+}
@@ -27,11 +27,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.IBinder;
 import android.os.Message;
-import android.os.PersistableBundle;
 import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.SystemProperties;
-import android.provider.Settings;
 import android.telecom.TelecomManager;
 import android.telephony.CarrierConfigManager;
 import android.telephony.Rlog;
@@ -53,6 +51,7 @@ import com.mediatek.ims.WfcReasonInfo;
 
 import java.util.HashMap;
 
+import org.gsma.joyn.JoynService;
 import org.gsma.joyn.JoynServiceListener;
 import org.gsma.joyn.capability.CapabilityService;
 import org.gsma.joyn.chat.ChatService;
@@ -225,14 +224,17 @@ public class ImsManager {
     private int mPhoneId;
     private IImsService mImsService = null;
 
-    // RCS Terminal API Services
-    private CapabilityService mCapabilitiesApi;
-    private ChatService mChatApi;
-    private ContactsService mContactsApi;
-    private FileTransferService mFileTransferApi;
-    private GeolocSharingService mGeolocSharingApi;
-    private VideoSharingService mVideoSharingApi;
-    private ImageSharingService mImageSharingApi;
+    // RCS Terminal API Services, created and bound on first use
+    private static final int TERMINAL_API_CAPABILITIES = 0;
+    private static final int TERMINAL_API_CHAT = 1;
+    private static final int TERMINAL_API_CONTACTS = 2;
+    private static final int TERMINAL_API_FILE_TRANSFER = 3;
+    private static final int TERMINAL_API_GEOLOC_SHARING = 4;
+    private static final int TERMINAL_API_IMAGE_SHARING = 5;
+    private static final int TERMINAL_API_VIDEO_SHARING = 6;
+    private static final int TERMINAL_API_COUNT = 7;
+    private final Object mTerminalApiLock = new Object();
+    private final JoynService[] mTerminalApis = new JoynService[TERMINAL_API_COUNT];
 
     private ImsServiceDeathRecipient mDeathRecipient = new ImsServiceDeathRecipient();
     // Ut interface for the supplementary service configuration
@@ -266,9 +268,7 @@ public class ImsManager {
      * Returns the user configuration of Enhanced 4G LTE Mode setting
      */
     public static boolean isEnhanced4gLteModeSettingEnabledByUser(Context context) {
-        int enabled = android.provider.Settings.Global.getInt(
-                    context.getContentResolver(),
-                    android.provider.Settings.Global.ENHANCED_4G_MODE_ENABLED, ImsConfig.FeatureValueConstants.ON);
+        int enabled = ImsFeatureCache.getInstance(context).getEnhanced4gMode();
         return (enabled == 1) ? true : false;
     }
 
@@ -280,6 +280,7 @@ public class ImsManager {
         android.provider.Settings.Global.putInt(
                 context.getContentResolver(),
                 android.provider.Settings.Global.ENHANCED_4G_MODE_ENABLED, value);
+        ImsFeatureCache.getInstance(context).invalidateSettings();
 
         if (isNonTtyOrTtyOnVolteEnabled(context)) {
             ImsManager imsManager = ImsManager.getInstance(context,
@@ -299,14 +300,12 @@ public class ImsManager {
      * supported.
      */
     public static boolean isNonTtyOrTtyOnVolteEnabled(Context context) {
-        if (getBooleanCarrierConfig(context,
-                    CarrierConfigManager.KEY_CARRIER_VOLTE_TTY_SUPPORTED_BOOL)) {
+        ImsFeatureCache cache = ImsFeatureCache.getInstance(context);
+        if (cache.isTtyOnVolteSupported()) {
             return true;
         }
 
-        return Settings.Secure.getInt(context.getContentResolver(),
-                Settings.Secure.PREFERRED_TTY_MODE, TelecomManager.TTY_MODE_OFF)
-                == TelecomManager.TTY_MODE_OFF;
+        return cache.getTtyMode() == TelecomManager.TTY_MODE_OFF;
     }
 
     /**
@@ -318,10 +317,7 @@ public class ImsManager {
             return true;
         }
 
-        return context.getResources().getBoolean(
-                com.android.internal.R.bool.config_device_volte_available)
-                && getBooleanCarrierConfig(context,
-                        CarrierConfigManager.KEY_CARRIER_VOLTE_AVAILABLE_BOOL);
+        return ImsFeatureCache.getInstance(context).isVolteAvailable();
     }
 
     /*
@@ -400,11 +396,7 @@ public class ImsManager {
             return true;
         }
 
-        return
-                context.getResources().getBoolean(
-                        com.android.internal.R.bool.config_device_vt_available) &&
-                getBooleanCarrierConfig(context,
-                        CarrierConfigManager.KEY_CARRIER_VT_AVAILABLE_BOOL);
+        return ImsFeatureCache.getInstance(context).isVtAvailable();
     }
 
     /**
@@ -459,9 +451,7 @@ public class ImsManager {
      * Returns the user configuration of WFC modem setting
      */
     public static int getWfcMode(Context context) {
-        int setting = android.provider.Settings.Global.getInt(context.getContentResolver(),
-                android.provider.Settings.Global.WFC_IMS_MODE,
-                ImsConfig.WfcModeFeatureValueConstants.WIFI_PREFERRED);
+        int setting = ImsFeatureCache.getInstance(context).getWfcMode();
         if (DBG) log("getWfcMode - setting=" + setting);
         return setting;
     }
@@ -473,6 +463,7 @@ public class ImsManager {
         if (DBG) log("setWfcMode - setting=" + wfcMode);
         android.provider.Settings.Global.putInt(context.getContentResolver(),
                 android.provider.Settings.Global.WFC_IMS_MODE, wfcMode);
+        ImsFeatureCache.getInstance(context).invalidateSettings();
 
         setWfcModeInternal(context, wfcMode);
     }
@@ -544,93 +535,145 @@ public class ImsManager {
             return true;
         }
 
-        return
-               context.getResources().getBoolean(
-                       com.android.internal.R.bool.config_device_wfc_ims_available) &&
-               getBooleanCarrierConfig(context,
-                       CarrierConfigManager.KEY_CARRIER_WFC_IMS_AVAILABLE_BOOL);
+        return ImsFeatureCache.getInstance(context).isWfcAvailable();
     }
 
     private ImsManager(Context context, int phoneId) {
         mContext = context;
         mPhoneId = phoneId;
         createImsService(true);
-        createTerminalApiServices();
-    }
-
-    private void createTerminalApiServices()
-    {
-        Log.d(TAG, "createTerminalApiServices entry");
-        mCapabilitiesApi = new CapabilityService(mContext,
-                new MyServiceListener());
-        mCapabilitiesApi.connect();
-        mChatApi = new ChatService(mContext,
-                new MyServiceListener());
-        mChatApi.connect();
-        mContactsApi = new ContactsService(mContext,
-                new MyServiceListener());
-        mContactsApi.connect();
-        mFileTransferApi = new FileTransferService(mContext,
-                new MyServiceListener());
-        mFileTransferApi.connect();
-        mGeolocSharingApi = new GeolocSharingService(mContext,
-                new MyServiceListener());
-        mGeolocSharingApi.connect();
-        mImageSharingApi = new ImageSharingService(mContext,
-                new MyServiceListener());
-        mImageSharingApi.connect();
-        mVideoSharingApi = new VideoSharingService(mContext,
-                new MyServiceListener());
-        mVideoSharingApi.connect();
+    }
+
+    /**
+     * Reads the provisioned capability cache expiration and applies it to the
+     * Capabilities Service Terminal API local cache.
+     */
+    private void updateCapabilitiesCacheExpiration(final CapabilityService capabilitiesApi) {
+        QueuedWork.singleThreadExecutor().submit(new Runnable() {
+            public void run() {
+                try {
+                    capabilitiesApi.setCapabilitiesCacheExpiration(
+                            getConfigInterface().getProvisionedValue(
+                                    ImsConfig.ConfigConstants.CAPABILITIES_CACHE_EXPIRATION));
+                } catch (ImsException e) {
+                    // keep the default expiration
+                }
+            }
+        });
+    }
+
+    /*
+     * The Terminal API services are created and connected on the first call of their getter.
+     * The connection is asynchronous: until the service is connected,
+     * JoynService.isServiceConnected() returns false and the service calls throw
+     * JoynServiceNotAvailableException. Clients which use a service right after getting it
+     * should call connectTerminalApiServices() early, e.g. when the IMS service is opened.
+     */
+
+    /**
+     * Creates and connects all the Terminal API services which are not created yet, so that
+     * they are connected by the time the clients get them.
+     */
+    public void connectTerminalApiServices() {
+        for (int api = 0; api < TERMINAL_API_COUNT; api++) {
+            getTerminalApi(api);
+        }
     }
 
     /**
      * Returns a Capabilities Service Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public CapabilityService getCapabilitiesService() {
-        return mCapabilitiesApi;
+        return (CapabilityService) getTerminalApi(TERMINAL_API_CAPABILITIES);
     }
 
     /**
      * Returns a Chat Service Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public ChatService getChatService() {
-        return mChatApi;
+        return (ChatService) getTerminalApi(TERMINAL_API_CHAT);
     }
 
     /**
      * Returns a File Sharing Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public FileTransferService getFileTransferService() {
-        return mFileTransferApi;
+        return (FileTransferService) getTerminalApi(TERMINAL_API_FILE_TRANSFER);
     }
 
     /**
      * Returns a Contacts Service Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public ContactsService getContactsService() {
-        return mContactsApi;
+        return (ContactsService) getTerminalApi(TERMINAL_API_CONTACTS);
     }
 
     /**
      * Returns a Geoloc Sharing Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public GeolocSharingService getGeolocSharingService() {
-        return mGeolocSharingApi;
+        return (GeolocSharingService) getTerminalApi(TERMINAL_API_GEOLOC_SHARING);
     }
 
     /**
      * Returns a Image Sharing Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public ImageSharingService getImageSharingService() {
-        return mImageSharingApi;
+        return (ImageSharingService) getTerminalApi(TERMINAL_API_IMAGE_SHARING);
     }
 
     /**
      * Returns a Video Sharing Terminal API to client.
+     * The service may not be connected yet on the first call.
      */
     public VideoSharingService getVideoSharingService() {
-        return mVideoSharingApi;
+        return (VideoSharingService) getTerminalApi(TERMINAL_API_VIDEO_SHARING);
+    }
+
+    /**
+     * Returns a Terminal API service, creating and connecting it on first use.
+     */
+    private JoynService getTerminalApi(int api) {
+        synchronized (mTerminalApiLock) {
+            JoynService service = mTerminalApis[api];
+            if (service == null) {
+                service = createTerminalApi(api);
+                mTerminalApis[api] = service;
+                service.connect();
+                if (api == TERMINAL_API_CAPABILITIES) {
+                    updateCapabilitiesCacheExpiration((CapabilityService) service);
+                }
+            }
+            return service;
+        }
+    }
+
+    private JoynService createTerminalApi(int api) {
+        MyServiceListener listener = new MyServiceListener();
+        switch (api) {
+            case TERMINAL_API_CAPABILITIES:
+                return new CapabilityService(mContext, listener);
+            case TERMINAL_API_CHAT:
+                return new ChatService(mContext, listener);
+            case TERMINAL_API_CONTACTS:
+                return new ContactsService(mContext, listener);
+            case TERMINAL_API_FILE_TRANSFER:
+                return new FileTransferService(mContext, listener);
+            case TERMINAL_API_GEOLOC_SHARING:
+                return new GeolocSharingService(mContext, listener);
+            case TERMINAL_API_IMAGE_SHARING:
+                return new ImageSharingService(mContext, listener);
+            case TERMINAL_API_VIDEO_SHARING:
+                return new VideoSharingService(mContext, listener);
+            default:
+                throw new IllegalArgumentException("Unknown Terminal API " + api);
+        }
     }
 
     /**
@@ -861,11 +904,15 @@ public class ImsManager {
             int serviceType, int callType) throws ImsException {
         checkAndThrowExceptionIfServiceUnavailable();
 
+        long begin = ImsCallSetupMetrics.now();
         try {
             return mImsService.createCallProfile(serviceId, serviceType, callType);
         } catch (RemoteException e) {
             throw new ImsException("createCallProfile()", e,
                     ImsReasonInfo.CODE_LOCAL_IMS_SERVICE_DOWN);
+        } finally {
+            ImsCallSetupMetrics.getInstance().record(
+                    ImsCallSetupMetrics.LATENCY_CREATE_CALL_PROFILE, begin);
         }
     }
 
@@ -882,6 +929,7 @@ public class ImsManager {
      */
     public ImsCall makeCall(int serviceId, ImsCallProfile profile, String[] callees,
             ImsCall.Listener listener) throws ImsException {
+        long begin = ImsCallSetupMetrics.now();
         if (DBG) {
             log("makeCall :: serviceId=" + serviceId
                     + ", profile=" + profile + ", callees=" + callees);
@@ -890,9 +938,11 @@ public class ImsManager {
         checkAndThrowExceptionIfServiceUnavailable();
 
         ImsCall call = new ImsCall(mContext, profile);
+        call.getSetupTrace().mark(ImsCallSetupMetrics.PHASE_MAKE_CALL, begin);
 
         call.setListener(listener);
         ImsCallSession session = createCallSession(serviceId, profile);
+        call.getSetupTrace().mark(ImsCallSetupMetrics.PHASE_SESSION);
 
         if ((callees != null) && (callees.length == 1) &&
                 /// M:  For VoLTE enhanced conference call. @{
@@ -917,6 +967,7 @@ public class ImsManager {
      */
     public ImsCall takeCall(int serviceId, Intent incomingCallIntent,
             ImsCall.Listener listener) throws ImsException {
+        long begin = ImsCallSetupMetrics.now();
         if (DBG) {
             log("takeCall :: serviceId=" + serviceId
                     + ", incomingCall=" + incomingCallIntent);
@@ -952,8 +1003,10 @@ public class ImsManager {
             }
 
             ImsCall call = new ImsCall(mContext, session.getCallProfile());
+            call.getSetupTrace().mark(ImsCallSetupMetrics.PHASE_TAKE_CALL, begin);
 
             call.attachSession(new ImsCallSession(session));
+            call.getSetupTrace().mark(ImsCallSetupMetrics.PHASE_SESSION);
             call.setListener(listener);
 
             return call;
@@ -1016,18 +1069,7 @@ public class ImsManager {
      * @return boolean value of corresponding key.
      */
     private static boolean getBooleanCarrierConfig(Context context, String key) {
-        CarrierConfigManager configManager = (CarrierConfigManager) context.getSystemService(
-                Context.CARRIER_CONFIG_SERVICE);
-        PersistableBundle b = null;
-        if (configManager != null) {
-            b = configManager.getConfig();
-        }
-        if (b != null) {
-            return b.getBoolean(key);
-        } else {
-            // Return static default defined in CarrierConfigManager.
-            return CarrierConfigManager.getDefaultConfig().getBoolean(key);
-        }
+        return ImsFeatureCache.getInstance(context).getBooleanCarrierConfig(key);
     }
 
     /**
@@ -16,6 +16,7 @@
 
 package com.android.ims;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,6 +24,7 @@ import android.os.AsyncResult;
 import android.os.Bundle;
 import android.os.Message;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.telephony.Rlog;
 
 import com.android.ims.internal.IImsUt;
@@ -75,6 +77,32 @@ public class ImsUt implements ImsUtInterface {
     private HashMap<Integer, Message> mPendingCmds =
             new HashMap<Integer, Message>();
 
+    // Time during which the result of a query is reused, in milliseconds
+    private static final long QUERY_CACHE_EXPIRATION_MS = 5000;
+
+    /**
+     * Result of a query, reused until it expires or a configuration is updated.
+     */
+    private static class CachedResult {
+        final Object ssInfo;
+        final long timestamp;
+
+        CachedResult(Object ssInfo, long timestamp) {
+            this.ssInfo = ssInfo;
+            this.timestamp = timestamp;
+        }
+    }
+
+    // Queries in progress, from the query key to the request id
+    private HashMap<String, Integer> mPendingQueries = new HashMap<String, Integer>();
+    // Query key of the queries in progress, from the request id
+    private HashMap<Integer, String> mPendingQueryKeys = new HashMap<Integer, String>();
+    // Additional messages waiting for the result of a query in progress
+    private HashMap<Integer, ArrayList<Message>> mCoalescedCmds =
+            new HashMap<Integer, ArrayList<Message>>();
+    // Results of the recent queries, from the query key
+    private HashMap<String, CachedResult> mQueryCache = new HashMap<String, CachedResult>();
+
     public ImsUt(IImsUt iUt) {
         miUt = iUt;
 
@@ -100,12 +128,17 @@ public class ImsUt implements ImsUtInterface {
                     mPendingCmds.entrySet().toArray(new Map.Entry[mPendingCmds.size()]);
 
                 for (Map.Entry<Integer, Message> entry : entries) {
-                    sendFailureReport(entry.getValue(),
+                    sendFailureReports(entry.getKey(),
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
                 }
 
                 mPendingCmds.clear();
             }
+
+            mCoalescedCmds.clear();
+            mPendingQueries.clear();
+            mPendingQueryKeys.clear();
+            mQueryCache.clear();
         }
     }
 
@@ -127,6 +160,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "CB:" + cbType;
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCallBarring(cbType);
 
@@ -137,6 +175,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -156,6 +195,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "CF:" + condition + ":" + number;
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCallForward(condition, number);
 
@@ -166,6 +210,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -184,6 +229,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "CW";
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCallWaiting();
 
@@ -194,6 +244,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -211,6 +262,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "CLIR";
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCLIR();
 
@@ -221,6 +277,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -237,6 +294,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "CLIP";
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCLIP();
 
@@ -247,6 +309,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -263,6 +326,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "COLR";
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCOLR();
 
@@ -273,6 +341,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -289,6 +358,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            String queryKey = "COLP";
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCOLP();
 
@@ -299,6 +373,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -327,6 +402,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCallBarring(cbType, action, barrList);
 
@@ -357,6 +434,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCallForward(action, condition, number, serviceClass, timeSeconds);
 
@@ -385,6 +464,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCallWaiting(enable, serviceClass);
 
@@ -412,6 +493,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCLIR(clirMode);
 
@@ -439,6 +522,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCLIP(enable);
 
@@ -466,6 +551,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCOLR(presentation);
 
@@ -493,6 +580,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCOLP(enable);
 
@@ -516,6 +605,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized(mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.transact(ssInfo);
 
@@ -533,6 +624,111 @@ public class ImsUt implements ImsUtInterface {
         }
     }
 
+    /**
+     * Serves a query from the recent results or attaches it to the same query in progress.
+     * Must be called with mLockObj held.
+     *
+     * @return true if the query needs no new request
+     */
+    private boolean attachToQuery(String queryKey, Message result) {
+        CachedResult cached = mQueryCache.get(queryKey);
+        if (cached != null) {
+            if (SystemClock.elapsedRealtime() - cached.timestamp < QUERY_CACHE_EXPIRATION_MS) {
+                if (DBG) {
+                    log("attachToQuery :: cached result for " + queryKey);
+                }
+                sendSuccessReport(result, copySsInfo(cached.ssInfo));
+                return true;
+            }
+            mQueryCache.remove(queryKey);
+        }
+
+        Integer id = mPendingQueries.get(queryKey);
+        if (id == null) {
+            return false;
+        }
+        if (DBG) {
+            log("attachToQuery :: attached to request " + id + " for " + queryKey);
+        }
+        ArrayList<Message> waiting = mCoalescedCmds.get(id);
+        if (waiting == null) {
+            waiting = new ArrayList<Message>();
+            mCoalescedCmds.put(id, waiting);
+        }
+        waiting.add(result);
+        return true;
+    }
+
+    private void addPendingQuery(String queryKey, int id) {
+        Integer key = Integer.valueOf(id);
+        mPendingQueries.put(queryKey, key);
+        mPendingQueryKeys.put(key, queryKey);
+    }
+
+    /**
+     * Drops the recent query results, and prevents the queries in progress from being
+     * reused, as their results may not reflect a configuration update.
+     */
+    private void invalidateQueries() {
+        mQueryCache.clear();
+        mPendingQueries.clear();
+        mPendingQueryKeys.clear();
+    }
+
+    /**
+     * Returns a copy of a query result, so that each message has its own instance.
+     */
+    private static Object copySsInfo(Object ssInfo) {
+        if (ssInfo instanceof Bundle) {
+            return new Bundle((Bundle) ssInfo);
+        } else if (ssInfo instanceof Object[]) {
+            return ((Object[]) ssInfo).clone();
+        }
+        return ssInfo;
+    }
+
+    /**
+     * Reports the result of a request to its message and to the messages attached to it.
+     * Must be called with mLockObj held.
+     */
+    private void sendSuccessReports(Integer id, Object ssInfo) {
+        sendSuccessReport(mPendingCmds.remove(id), ssInfo);
+
+        ArrayList<Message> waiting = mCoalescedCmds.remove(id);
+        if (waiting != null) {
+            for (Message result : waiting) {
+                sendSuccessReport(result, copySsInfo(ssInfo));
+            }
+        }
+
+        String queryKey = mPendingQueryKeys.remove(id);
+        if (queryKey != null) {
+            mPendingQueries.remove(queryKey);
+            mQueryCache.put(queryKey,
+                    new CachedResult(copySsInfo(ssInfo), SystemClock.elapsedRealtime()));
+        }
+    }
+
+    /**
+     * Reports the failure of a request to its message and to the messages attached to it.
+     * Must be called with mLockObj held.
+     */
+    private void sendFailureReports(Integer id, ImsReasonInfo error) {
+        sendFailureReport(mPendingCmds.remove(id), error);
+
+        ArrayList<Message> waiting = mCoalescedCmds.remove(id);
+        if (waiting != null) {
+            for (Message result : waiting) {
+                sendFailureReport(result, error);
+            }
+        }
+
+        String queryKey = mPendingQueryKeys.remove(id);
+        if (queryKey != null) {
+            mPendingQueries.remove(queryKey);
+        }
+    }
+
     private void sendFailureReport(Message result, ImsReasonInfo error) {
         if (result == null || error == null) {
             return;
@@ -595,6 +791,7 @@ public class ImsUt implements ImsUtInterface {
             synchronized(mLockObj) {
                 sendSuccessReport(mPendingCmds.get(key));
                 mPendingCmds.remove(key);
+                invalidateQueries();
             }
         }
 
@@ -603,8 +800,8 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendFailureReport(mPendingCmds.get(key), error);
-                mPendingCmds.remove(key);
+                sendFailureReports(key, error);
+                invalidateQueries();
             }
         }
 
@@ -616,8 +813,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendSuccessReport(mPendingCmds.get(key), ssInfo);
-                mPendingCmds.remove(key);
+                sendSuccessReports(key, ssInfo);
             }
         }
 
@@ -626,8 +822,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendFailureReport(mPendingCmds.get(key), error);
-                mPendingCmds.remove(key);
+                sendFailureReports(key, error);
             }
         }
 
@@ -640,8 +835,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendSuccessReport(mPendingCmds.get(key), cbInfo);
-                mPendingCmds.remove(key);
+                sendSuccessReports(key, cbInfo);
             }
         }
 
@@ -654,8 +848,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendSuccessReport(mPendingCmds.get(key), cfInfo);
-                mPendingCmds.remove(key);
+                sendSuccessReports(key, cfInfo);
             }
         }
 
@@ -668,8 +861,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized(mLockObj) {
-                sendSuccessReport(mPendingCmds.get(key), cwInfo);
-                mPendingCmds.remove(key);
+                sendSuccessReports(key, cwInfo);
             }
         }
 
@@ -683,8 +875,7 @@ public class ImsUt implements ImsUtInterface {
             Integer key = Integer.valueOf(id);
 
             synchronized (mLockObj) {
-                sendSuccessReport(mPendingCmds.get(key), cfInfo);
-                mPendingCmds.remove(key);
+                sendSuccessReports(key, cfInfo);
             }
         }
         /// @}
@@ -702,6 +893,11 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized (mLockObj) {
+            String queryKey = "CFTS:" + condition;
+            if (attachToQuery(queryKey, result)) {
+                return;
+            }
+
             try {
                 int id = miUt.queryCallForwardInTimeSlot(condition);
 
@@ -712,6 +908,7 @@ public class ImsUt implements ImsUtInterface {
                 }
 
                 mPendingCmds.put(Integer.valueOf(id), result);
+                addPendingQuery(queryKey, id);
             } catch (RemoteException e) {
                 sendFailureReport(result,
                         new ImsReasonInfo(ImsReasonInfo.CODE_UT_SERVICE_UNAVAILABLE, 0));
@@ -733,6 +930,8 @@ public class ImsUt implements ImsUtInterface {
         }
 
         synchronized (mLockObj) {
+            invalidateQueries();
+
             try {
                 int id = miUt.updateCallForwardInTimeSlot(action,
                         condition, number, timeSeconds, timeSlot);
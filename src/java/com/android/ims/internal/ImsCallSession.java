@@ -18,9 +18,11 @@ package com.android.ims.internal;
 
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.telecom.Connection;
 
+import java.util.HashMap;
 import java.util.Objects;
 import android.util.Log;
 import com.android.ims.ImsCallProfile;
@@ -422,6 +424,21 @@ public class ImsCallSession {
     private boolean mClosed = false;
     private Listener mListener;
 
+    // Local copies of the remote session values, guarded by mCacheLock. They are filled on
+    // first read and dropped when the session notifies a change or a request is sent, so that
+    // repeated reads do not go through a binder transaction. The cached profiles are never
+    // handed out: each read returns a copy, as a binder read would, since the callers
+    // modify the profile they get.
+    private final Object mCacheLock = new Object();
+    // Incremented on every invalidation, so that a read racing with a change is not cached
+    private int mCacheGeneration;
+    private String mCallId;
+    private int mState = State.INVALID;
+    private ImsCallProfile mCallProfile;
+    private ImsCallProfile mLocalCallProfile;
+    private ImsCallProfile mRemoteCallProfile;
+    private final HashMap<String, String> mProperties = new HashMap<String, String>();
+
     public ImsCallSession(IImsCallSession iSession) {
         miSession = iSession;
 
@@ -465,8 +482,18 @@ public class ImsCallSession {
             return null;
         }
 
+        synchronized (mCacheLock) {
+            if (mCallId != null) {
+                return mCallId;
+            }
+        }
+
         try {
-            return miSession.getCallId();
+            String callId = miSession.getCallId();
+            synchronized (mCacheLock) {
+                mCallId = callId;
+            }
+            return callId;
         } catch (RemoteException e) {
             return null;
         }
@@ -482,8 +509,22 @@ public class ImsCallSession {
             return null;
         }
 
+        int generation;
+        synchronized (mCacheLock) {
+            if (mCallProfile != null) {
+                return copyProfile(mCallProfile);
+            }
+            generation = mCacheGeneration;
+        }
+
         try {
-            return miSession.getCallProfile();
+            ImsCallProfile profile = miSession.getCallProfile();
+            synchronized (mCacheLock) {
+                if (generation == mCacheGeneration) {
+                    mCallProfile = copyProfile(profile);
+                }
+            }
+            return profile;
         } catch (RemoteException e) {
             return null;
         }
@@ -499,8 +540,22 @@ public class ImsCallSession {
             return null;
         }
 
+        int generation;
+        synchronized (mCacheLock) {
+            if (mLocalCallProfile != null) {
+                return copyProfile(mLocalCallProfile);
+            }
+            generation = mCacheGeneration;
+        }
+
         try {
-            return miSession.getLocalCallProfile();
+            ImsCallProfile profile = miSession.getLocalCallProfile();
+            synchronized (mCacheLock) {
+                if (generation == mCacheGeneration) {
+                    mLocalCallProfile = copyProfile(profile);
+                }
+            }
+            return profile;
         } catch (RemoteException e) {
             return null;
         }
@@ -516,8 +571,22 @@ public class ImsCallSession {
             return null;
         }
 
+        int generation;
+        synchronized (mCacheLock) {
+            if (mRemoteCallProfile != null) {
+                return copyProfile(mRemoteCallProfile);
+            }
+            generation = mCacheGeneration;
+        }
+
         try {
-            return miSession.getRemoteCallProfile();
+            ImsCallProfile profile = miSession.getRemoteCallProfile();
+            synchronized (mCacheLock) {
+                if (generation == mCacheGeneration) {
+                    mRemoteCallProfile = copyProfile(profile);
+                }
+            }
+            return profile;
         } catch (RemoteException e) {
             return null;
         }
@@ -550,8 +619,22 @@ public class ImsCallSession {
             return null;
         }
 
+        int generation;
+        synchronized (mCacheLock) {
+            if (mProperties.containsKey(name)) {
+                return mProperties.get(name);
+            }
+            generation = mCacheGeneration;
+        }
+
         try {
-            return miSession.getProperty(name);
+            String value = miSession.getProperty(name);
+            synchronized (mCacheLock) {
+                if (generation == mCacheGeneration) {
+                    mProperties.put(name, value);
+                }
+            }
+            return value;
         } catch (RemoteException e) {
             return null;
         }
@@ -568,13 +651,79 @@ public class ImsCallSession {
             return State.INVALID;
         }
 
+        int generation;
+        synchronized (mCacheLock) {
+            if (mState != State.INVALID) {
+                return mState;
+            }
+            generation = mCacheGeneration;
+        }
+
         try {
-            return miSession.getState();
+            int state = miSession.getState();
+            synchronized (mCacheLock) {
+                if (generation == mCacheGeneration) {
+                    mState = state;
+                }
+            }
+            return state;
         } catch (RemoteException e) {
             return State.INVALID;
         }
     }
 
+    /**
+     * Drops the locally cached session values, so that the next read of the call profiles,
+     * state or properties is served by the IMS service. Reads are otherwise answered locally
+     * until the session notifies a change.
+     */
+    public void refresh() {
+        invalidateCache();
+    }
+
+    /**
+     * Drops the cached values which may change during the session lifetime.
+     */
+    private void invalidateCache() {
+        synchronized (mCacheLock) {
+            mCacheGeneration++;
+            mState = State.INVALID;
+            mCallProfile = null;
+            mLocalCallProfile = null;
+            mRemoteCallProfile = null;
+            mProperties.clear();
+        }
+    }
+
+    /**
+     * Caches the call profile notified by the session and drops the other values.
+     */
+    private void updateCache(ImsCallProfile profile) {
+        ImsCallProfile copy = copyProfile(profile);
+        synchronized (mCacheLock) {
+            invalidateCache();
+            mCallProfile = copy;
+        }
+    }
+
+    /**
+     * Returns a copy of a call profile, made through a parcel like a binder read.
+     */
+    private static ImsCallProfile copyProfile(ImsCallProfile profile) {
+        if (profile == null) {
+            return null;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            profile.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return ImsCallProfile.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
     /**
      * Determines if the {@link ImsCallSession} is currently alive (e.g. not in a terminated or
      * closed state).
@@ -671,6 +820,7 @@ public class ImsCallSession {
 
         try {
             miSession.start(callee, profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -693,6 +843,7 @@ public class ImsCallSession {
 
         try {
             miSession.startConference(participants, profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -711,6 +862,7 @@ public class ImsCallSession {
 
         try {
             miSession.accept(callType, profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -728,6 +880,7 @@ public class ImsCallSession {
 
         try {
             miSession.reject(reason);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -744,6 +897,7 @@ public class ImsCallSession {
 
         try {
             miSession.terminate(reason);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -761,6 +915,7 @@ public class ImsCallSession {
 
         try {
             miSession.hold(profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -779,6 +934,7 @@ public class ImsCallSession {
 
         try {
             miSession.resume(profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -796,6 +952,7 @@ public class ImsCallSession {
 
         try {
             miSession.merge();
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -814,6 +971,7 @@ public class ImsCallSession {
 
         try {
             miSession.update(callType, profile);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -831,6 +989,7 @@ public class ImsCallSession {
 
         try {
             miSession.extendToConference(participants);
+            invalidateCache();
         } catch (RemoteException e) {
         }
     }
@@ -978,6 +1137,7 @@ public class ImsCallSession {
         @Override
         public void callSessionProgressing(IImsCallSession session,
                 ImsStreamMediaProfile profile) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionProgressing(ImsCallSession.this, profile);
             }
@@ -986,6 +1146,7 @@ public class ImsCallSession {
         @Override
         public void callSessionStarted(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionStarted(ImsCallSession.this, profile);
             }
@@ -994,6 +1155,7 @@ public class ImsCallSession {
         @Override
         public void callSessionStartFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionStartFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1002,6 +1164,10 @@ public class ImsCallSession {
         @Override
         public void callSessionTerminated(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
+            synchronized (mCacheLock) {
+                mState = State.TERMINATED;
+            }
             if (mListener != null) {
                 mListener.callSessionTerminated(ImsCallSession.this, reasonInfo);
             }
@@ -1013,6 +1179,7 @@ public class ImsCallSession {
         @Override
         public void callSessionHeld(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionHeld(ImsCallSession.this, profile);
             }
@@ -1021,6 +1188,7 @@ public class ImsCallSession {
         @Override
         public void callSessionHoldFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionHoldFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1029,6 +1197,7 @@ public class ImsCallSession {
         @Override
         public void callSessionHoldReceived(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionHoldReceived(ImsCallSession.this, profile);
             }
@@ -1037,6 +1206,7 @@ public class ImsCallSession {
         @Override
         public void callSessionResumed(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionResumed(ImsCallSession.this, profile);
             }
@@ -1045,6 +1215,7 @@ public class ImsCallSession {
         @Override
         public void callSessionResumeFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionResumeFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1053,6 +1224,7 @@ public class ImsCallSession {
         @Override
         public void callSessionResumeReceived(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionResumeReceived(ImsCallSession.this, profile);
             }
@@ -1068,6 +1240,7 @@ public class ImsCallSession {
         @Override
         public void callSessionMergeStarted(IImsCallSession session,
                 IImsCallSession newSession, ImsCallProfile profile) {
+            invalidateCache();
             // This callback can be used for future use to add additional
             // functionality that may be needed between conference start and complete
             Log.d(TAG, "callSessionMergeStarted");
@@ -1080,6 +1253,7 @@ public class ImsCallSession {
          */
         @Override
         public void callSessionMergeComplete(IImsCallSession newSession) {
+            invalidateCache();
             if (mListener != null) {
                 if (newSession != null) {
                     // Check if the active session is the same session that was
@@ -1110,6 +1284,7 @@ public class ImsCallSession {
         @Override
         public void callSessionMergeFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionMergeFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1121,6 +1296,7 @@ public class ImsCallSession {
         @Override
         public void callSessionUpdated(IImsCallSession session,
                 ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionUpdated(ImsCallSession.this, profile);
             }
@@ -1129,6 +1305,7 @@ public class ImsCallSession {
         @Override
         public void callSessionUpdateFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionUpdateFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1137,6 +1314,7 @@ public class ImsCallSession {
         @Override
         public void callSessionUpdateReceived(IImsCallSession session,
                 ImsCallProfile profile) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionUpdateReceived(ImsCallSession.this, profile);
             }
@@ -1148,6 +1326,7 @@ public class ImsCallSession {
         @Override
         public void callSessionConferenceExtended(IImsCallSession session,
                 IImsCallSession newSession, ImsCallProfile profile) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionConferenceExtended(ImsCallSession.this,
                         new ImsCallSession(newSession), profile);
@@ -1157,6 +1336,7 @@ public class ImsCallSession {
         @Override
         public void callSessionConferenceExtendFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionConferenceExtendFailed(ImsCallSession.this, reasonInfo);
             }
@@ -1165,6 +1345,7 @@ public class ImsCallSession {
         @Override
         public void callSessionConferenceExtendReceived(IImsCallSession session,
                 IImsCallSession newSession, ImsCallProfile profile) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionConferenceExtendReceived(ImsCallSession.this,
                         new ImsCallSession(newSession), profile);
@@ -1177,6 +1358,7 @@ public class ImsCallSession {
          */
         @Override
         public void callSessionInviteParticipantsRequestDelivered(IImsCallSession session) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionInviteParticipantsRequestDelivered(ImsCallSession.this);
             }
@@ -1185,6 +1367,7 @@ public class ImsCallSession {
         @Override
         public void callSessionInviteParticipantsRequestFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionInviteParticipantsRequestFailed(ImsCallSession.this,
                         reasonInfo);
@@ -1193,6 +1376,7 @@ public class ImsCallSession {
 
         @Override
         public void callSessionRemoveParticipantsRequestDelivered(IImsCallSession session) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionRemoveParticipantsRequestDelivered(ImsCallSession.this);
             }
@@ -1201,6 +1385,7 @@ public class ImsCallSession {
         @Override
         public void callSessionRemoveParticipantsRequestFailed(IImsCallSession session,
                 ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionRemoveParticipantsRequestFailed(ImsCallSession.this,
                         reasonInfo);
@@ -1213,6 +1398,7 @@ public class ImsCallSession {
         @Override
         public void callSessionConferenceStateUpdated(IImsCallSession session,
                 ImsConferenceState state) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionConferenceStateUpdated(ImsCallSession.this, state);
             }
@@ -1236,6 +1422,7 @@ public class ImsCallSession {
         public void callSessionHandover(IImsCallSession session,
                                  int srcAccessTech, int targetAccessTech,
                                  ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionHandover(ImsCallSession.this, srcAccessTech,
                         targetAccessTech, reasonInfo);
@@ -1249,6 +1436,7 @@ public class ImsCallSession {
         public void callSessionHandoverFailed(IImsCallSession session,
                                        int srcAccessTech, int targetAccessTech,
                                        ImsReasonInfo reasonInfo) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionHandoverFailed(ImsCallSession.this, srcAccessTech,
                         targetAccessTech, reasonInfo);
@@ -1261,6 +1449,7 @@ public class ImsCallSession {
         @Override
         public void callSessionTtyModeReceived(IImsCallSession session,
                 int mode) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionTtyModeReceived(ImsCallSession.this, mode);
             }
@@ -1275,6 +1464,7 @@ public class ImsCallSession {
          */
         public void callSessionMultipartyStateChanged(IImsCallSession session,
                 boolean isMultiParty) {
+            invalidateCache();
 
             if (mListener != null) {
                 mListener.callSessionMultipartyStateChanged(ImsCallSession.this, isMultiParty);
@@ -1284,6 +1474,7 @@ public class ImsCallSession {
         @Override
         public void callSessionSuppServiceReceived(IImsCallSession session,
                 ImsSuppServiceNotification suppServiceInfo ) {
+            invalidateCache();
             if (mListener != null) {
                 mListener.callSessionSuppServiceReceived(ImsCallSession.this, suppServiceInfo);
             }
@@ -1298,6 +1489,7 @@ public class ImsCallSession {
          * @hide
          */
         public void callSessionPauInfoChanged(IImsCallSession session, ImsCallProfile profile) {
+            updateCache(profile);
             if (mListener != null) {
                 mListener.callSessionPauInfoChanged(ImsCallSession.this, profile);
             }
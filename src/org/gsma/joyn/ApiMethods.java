@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+/**
+ * Methods of the API interfaces called by {@link JoynService}, resolved once
+ * per API interface class and method name.
+ *
+ * The service methods are called by reflection because each service declares
+ * them in its own AIDL interface: there is no common interface to call them
+ * through.
+ *
+ * @hide
+ */
+public final class ApiMethods {
+    /**
+     * Methods per API interface class and method name
+     */
+    private static final HashMap<Class<?>, HashMap<String, Method>> sMethods =
+            new HashMap<Class<?>, HashMap<String, Method>>();
+
+    private ApiMethods() {
+    }
+
+    /**
+     * Returns an API method, resolving it only on first use for a given
+     * API interface class
+     *
+     * @param c API interface class
+     * @param method Method name
+     * @param paramClass Class of the parameter, or null if none
+     * @return Method
+     * @throws NoSuchMethodException
+     */
+    public static Method get(Class<?> c, String method, Class<?> paramClass)
+            throws NoSuchMethodException {
+        synchronized (sMethods) {
+            HashMap<String, Method> methods = sMethods.get(c);
+            if (methods == null) {
+                methods = new HashMap<String, Method>();
+                sMethods.put(c, methods);
+            }
+            Method m = methods.get(method);
+            if (m == null) {
+                if (paramClass != null) {
+                    m = c.getDeclaredMethod(method, paramClass);
+                } else {
+                    m = c.getDeclaredMethod(method);
+                }
+                methods.put(method, m);
+            }
+            return m;
+        }
+    }
+}
@@ -34,6 +34,10 @@ public class Build {
          */
         public final static int BASE = 1;
 
+        /**
+         * Version reading the capabilities in the compact parcel format
+         */
+        public final static int COMPACT_CAPABILITIES = 2;
     }
 
     /**
@@ -66,7 +70,7 @@ public class Build {
     /**
      * GSMA version number from class Build.VERSION_CODES
      */
-    public static final int API_VERSION = VERSION_CODES.BASE;
+    public static final int API_VERSION = VERSION_CODES.COMPACT_CAPABILITIES;
 
     /**
      * Internal number used by the underlying source control to represent this
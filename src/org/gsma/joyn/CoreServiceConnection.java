@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+
+/**
+ * Process-wide connection to the RCS core service. The core service is
+ * bound once while at least one client is registered, and its connection
+ * events are dispatched to all the registered clients, which then fetch
+ * their own API binder from the core service wrapper.
+ *
+ * The core service may dispatch its bind on the intent action, so there is
+ * one connection per distinct action: the services which bind with the
+ * action of their API interface keep their own binding, the other ones
+ * share the binding without action.
+ *
+ * @hide
+ */
+public final class CoreServiceConnection {
+    public static final String TAG = "TAPI-CoreServiceConnection";
+
+    /**
+     * Core service component
+     */
+    private static final ComponentName CORE_SERVICE = new ComponentName(
+            "com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
+
+    /**
+     * Core service connection client
+     */
+    public interface Client {
+        /**
+         * Callback called when the core service is connected
+         *
+         * @param wrapper Core service wrapper
+         */
+        void onCoreServiceConnected(ICoreServiceWrapper wrapper);
+
+        /**
+         * Callback called when the core service is disconnected
+         */
+        void onCoreServiceDisconnected();
+    }
+
+    /**
+     * Connections per bind action, the key is empty for no action
+     */
+    private static final HashMap<String, CoreServiceConnection> sInstances =
+            new HashMap<String, CoreServiceConnection>();
+
+    /**
+     * Application context
+     */
+    private final Context mContext;
+
+    /**
+     * Bind intent action, null if none
+     */
+    private final String mAction;
+
+    /**
+     * Handler of the main thread, where the connection events are dispatched
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Registered clients
+     */
+    private final ArrayList<Client> mClients = new ArrayList<Client>();
+
+    /**
+     * Core service wrapper, null if not connected
+     */
+    private ICoreServiceWrapper mWrapper = null;
+
+    private boolean mBound = false;
+
+    /**
+     * Returns the connection of the process binding without action
+     *
+     * @param ctx Context
+     * @return Connection
+     */
+    public static CoreServiceConnection getInstance(Context ctx) {
+        return getInstance(ctx, null);
+    }
+
+    /**
+     * Returns the connection of the process binding with an intent action
+     *
+     * @param ctx Context
+     * @param action Bind intent action, null if none
+     * @return Connection
+     */
+    public static synchronized CoreServiceConnection getInstance(Context ctx, String action) {
+        String key = (action != null) ? action : "";
+        CoreServiceConnection instance = sInstances.get(key);
+        if (instance == null) {
+            Context appContext = ctx.getApplicationContext();
+            instance = new CoreServiceConnection(appContext != null ? appContext : ctx, action);
+            sInstances.put(key, instance);
+        }
+        return instance;
+    }
+
+    private CoreServiceConnection(Context ctx, String action) {
+        mContext = ctx;
+        mAction = action;
+    }
+
+    /**
+     * Registers a client. The core service is bound on the first client,
+     * and a client registered while the service is connected is notified
+     * on the main thread.
+     *
+     * @param client Client
+     * @return Returns true if the core service is bound
+     */
+    public boolean register(final Client client) {
+        synchronized (mClients) {
+            if (mClients.contains(client)) {
+                return mBound;
+            }
+            mClients.add(client);
+            if (!mBound) {
+                Logger.i(TAG, "bind core service action " + mAction);
+                Intent intent = new Intent();
+                intent.setComponent(CORE_SERVICE);
+                if (mAction != null) {
+                    intent.setAction(mAction);
+                }
+                mBound = mContext.bindService(intent, mConnection, 0);
+                Logger.i(TAG, "bind core service status " + mBound);
+            } else if (mWrapper != null) {
+                final ICoreServiceWrapper wrapper = mWrapper;
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        synchronized (mClients) {
+                            if (!mClients.contains(client) || mWrapper != wrapper) {
+                                return;
+                            }
+                        }
+                        client.onCoreServiceConnected(wrapper);
+                    }
+                });
+            }
+            return mBound;
+        }
+    }
+
+    /**
+     * Unregisters a client. The core service is unbound after the last
+     * client. The client is not notified.
+     *
+     * @param client Client
+     */
+    public void unregister(Client client) {
+        synchronized (mClients) {
+            if (!mClients.remove(client) || !mClients.isEmpty() || !mBound) {
+                return;
+            }
+            Logger.i(TAG, "unbind core service");
+            mBound = false;
+            mWrapper = null;
+            try {
+                mContext.unbindService(mConnection);
+            } catch (IllegalArgumentException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the registered clients
+     */
+    private Client[] getClients() {
+        synchronized (mClients) {
+            return mClients.toArray(new Client[mClients.size()]);
+        }
+    }
+
+    /**
+     * Service connection
+     */
+    private ServiceConnection mConnection = new ServiceConnection() {
+        public void onServiceConnected(ComponentName className, IBinder service) {
+            Logger.i(TAG, "onServiceConnected entry " + className);
+            ICoreServiceWrapper wrapper = ICoreServiceWrapper.Stub.asInterface(service);
+            synchronized (mClients) {
+                mWrapper = wrapper;
+            }
+            for (Client client : getClients()) {
+                client.onCoreServiceConnected(wrapper);
+            }
+        }
+
+        public void onServiceDisconnected(ComponentName className) {
+            Logger.i(TAG, "onServiceDisconnected entry " + className);
+            synchronized (mClients) {
+                mWrapper = null;
+            }
+            for (Client client : getClients()) {
+                client.onCoreServiceDisconnected();
+            }
+        }
+    };
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn;
+
+/**
+ * SDP format parameters with the format 'key1=value1; ... keyN=valueN',
+ * tokenized once. Parameter names are compared ignoring case, as
+ * specified for the fmtp attribute.
+ *
+ * @hide
+ */
+public final class FmtpParameters {
+    private static final String[] EMPTY = new String[0];
+
+    private final String[] keys;
+
+    private final String[] values;
+
+    private final int count;
+
+    private FmtpParameters(String[] keys, String[] values, int count) {
+        this.keys = keys;
+        this.values = values;
+        this.count = count;
+    }
+
+    /**
+     * Parses a parameters string. Parameters without value have an
+     * empty value.
+     *
+     * @param params Parameters string, may be null
+     * @return Parameters
+     */
+    public static FmtpParameters parse(String params) {
+        if (params == null || params.length() == 0) {
+            return new FmtpParameters(EMPTY, EMPTY, 0);
+        }
+        int length = params.length();
+        int max = 1;
+        for (int i = 0; i < length; i++) {
+            if (params.charAt(i) == ';') {
+                max++;
+            }
+        }
+        String[] keys = new String[max];
+        String[] values = new String[max];
+        int count = 0;
+        int start = 0;
+        while (start <= length) {
+            int end = params.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            int equal = params.indexOf('=', start);
+            if (equal < 0 || equal > end) {
+                equal = end;
+            }
+            int keyStart = skipSpaces(params, start, equal);
+            int keyEnd = trimSpaces(params, keyStart, equal);
+            if (keyEnd > keyStart) {
+                keys[count] = params.substring(keyStart, keyEnd);
+                if (equal < end) {
+                    int valueStart = skipSpaces(params, equal + 1, end);
+                    values[count] = params.substring(valueStart, trimSpaces(params, valueStart, end));
+                } else {
+                    values[count] = "";
+                }
+                count++;
+            }
+            start = end + 1;
+        }
+        return new FmtpParameters(keys, values, count);
+    }
+
+    /**
+     * Returns the value of a parameter
+     *
+     * @param key Parameter name
+     * @return Value or null if the parameter is not present
+     */
+    public String get(String key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the integer value of a parameter
+     *
+     * @param key Parameter name
+     * @param defaultValue Value returned if the parameter is not present or not an integer
+     * @return Value
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = get(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // Nothing to do
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the number of parameters
+     *
+     * @return Number of parameters
+     */
+    public int size() {
+        return count;
+    }
+
+    private static int skipSpaces(String s, int start, int end) {
+        while (start < end && s.charAt(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpaces(String s, int start, int end) {
+        while (end > start && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -18,10 +18,6 @@
 
 package org.gsma.joyn;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
-
 /**
  * Default H264 Settings
  *
@@ -100,15 +96,7 @@ public class H264Config {
      * @return
      */
     public static int getCodecPacketizationMode(String codecParams) {
-        int packetization_mode = 0;
-        String valPackMode = getParameterValue(CODEC_PARAM_PACKETIZATIONMODE, codecParams);
-        if (valPackMode != null) {
-            try {
-                packetization_mode = Integer.parseInt(valPackMode);
-            } catch (Exception e) {
-            }
-        }
-        return packetization_mode;
+        return FmtpParameters.parse(codecParams).getInt(CODEC_PARAM_PACKETIZATIONMODE, 0);
     }
 
     /**
@@ -118,31 +106,6 @@ public class H264Config {
      * @return
      */
     public static String getCodecProfileLevelId(String codecParams) {
-        return getParameterValue(CODEC_PARAM_PROFILEID, codecParams);
-    }
-
-    /**
-     * Get parameter value from SDP parameters string with parameter-value
-     * format 'key1=value1; ... keyN=valueN'
-     *
-     * @param paramKey parameter name
-     * @param params parameters string
-     * @return if parameter exists return {@link String} with value, otherwise
-     *         return <code>null</code>
-     */
-    private static String getParameterValue(String paramKey, String params) {
-        String value = null;
-        if (params != null && params.length() > 0) {
-            try {
-                Pattern p = Pattern.compile("(?<=" + paramKey + "=).*?(?=;|$)");
-                Matcher m = p.matcher(params);
-                if (m.find()) {
-                    value = m.group(0);
-                }
-            } catch (PatternSyntaxException e) {
-                // Nothing to do
-            }
-        }
-        return value;
+        return FmtpParameters.parse(codecParams).get(CODEC_PARAM_PROFILEID);
     }
 }
@@ -17,6 +17,7 @@
  ******************************************************************************/
 package org.gsma.joyn;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
 
@@ -95,7 +96,9 @@ public abstract class JoynService {
     }
 
     /**
-     * Call specific method on the API interface
+     * Call specific method on the API interface. The methods are declared by
+     * the AIDL interface of each service, so they are called by reflection,
+     * see {@link ApiMethods}.
      *
      * @param method Method to be called
      * @param param Parameters of the method
@@ -104,18 +107,21 @@ public abstract class JoynService {
      * @throws JoynServiceException
      */
     private Object callApiMethod(String method, Object param, Class paramClass) throws JoynServiceException {
+        IInterface api = this.api;
         if (api != null) {
-            Class c = api.getClass();
             try {
+                Method m = ApiMethods.get(api.getClass(), method, paramClass);
                 if (param != null) {
-                    Method m = c.getDeclaredMethod(method, paramClass);
                     return m.invoke(api, param);
                 } else {
-                    Method m = c.getDeclaredMethod(method, null);
                     return m.invoke(api);
                 }
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                throw new JoynServiceException(cause != null ? cause.getMessage() : e.getMessage(),
+                        cause != null ? cause : e);
             } catch (Exception e) {
-                throw new JoynServiceException(e.getMessage());
+                throw new JoynServiceException(e.getMessage(), e);
             }
         } else {
             throw new JoynServiceNotAvailableException();
@@ -163,8 +169,10 @@ public abstract class JoynService {
             if (version == null) {
                 try {
                     version = (Integer) callApiMethod("getServiceVersion", null, null);
+                } catch (JoynServiceException e) {
+                    throw e;
                 } catch (Exception e) {
-                    throw new JoynServiceException(e.getMessage());
+                    throw new JoynServiceException(e.getMessage(), e);
                 }
             }
             return version;
@@ -19,12 +19,11 @@ package org.gsma.joyn;
 
 //import com.orangelabs.rcs.platform.AndroidFactory;
 
-import org.gsma.joyn.chat.ChatLog;
+import org.gsma.joyn.chat.AliasNameResolver;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.net.Uri;
 import android.util.Log;
 
@@ -83,20 +82,7 @@ public class JoynServiceConfiguration {
      * @return Boolean
      */
     public static boolean isServiceActivated(Context ctx) {
-        boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "ServiceActivated" + "'", null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                String value = c.getString(2);
-                result = Boolean.parseBoolean(value);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getBoolean("ServiceActivated", false);
     }
 
     /**
@@ -123,30 +109,15 @@ public class JoynServiceConfiguration {
     }
 
     /**
-     * Get the alias name
+     * Get the alias name. Lists should preload the alias names of the
+     * contacts shown with {@link AliasNameResolver#preload}.
      *
      * @param contact no
      * @result alias name for contact
      */
     public static String getAliasName(Context ctx, String Contact) {
-         Log.d("getAliasName ", Contact);
-         Uri CONTENT_URI = Uri.parse("content://com.orangelabs.rcs.chat/message");
-         ContentResolver cr = ctx.getContentResolver();
-        String aliasName = "";
-        Cursor cursor = cr.query(CONTENT_URI,
-                new String[] {
-                ChatLog.Message.DISPLAY_NAME,
-                },
-                "(" + ChatLog.Message.CONTACT_NUMBER + "='" + Contact + "' "+
-                "AND " +ChatLog.Message.DISPLAY_NAME + " <> '' "+")",
-                null,
-                ChatLog.GroupChat.TIMESTAMP + " DESC");
-        if (cursor.moveToFirst()) {
-            String status = cursor.getString(0);
-            aliasName = status;
-        }
-        cursor.close();
-        return aliasName;
+        Log.d("getAliasName ", Contact);
+        return AliasNameResolver.getInstance(ctx).getAliasName(Contact);
     }
 
     /**
@@ -156,22 +127,7 @@ public class JoynServiceConfiguration {
      * @return Boolean
      */
     public boolean getProfileAuth(Context ctx) {
-
-     // TODO: to be changed
-        boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "profileAuth"
-                + "'", null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                String value = c.getString(2);
-                result = Boolean.parseBoolean(value);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getBoolean("profileAuth", false);
     }
 
 
@@ -183,20 +139,7 @@ public class JoynServiceConfiguration {
      * @return Auth Type
      */
     public boolean getNABAuth(Context ctx) {
-        boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "nabAuth" + "'",
-                null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                String value = c.getString(2);
-                result = Boolean.parseBoolean(value);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getBoolean("nabAuth", false);
     }
 
     /**
@@ -206,20 +149,7 @@ public class JoynServiceConfiguration {
      * @return Boolean Auth Type
      */
      public boolean getPublicAccountAUTH(Context ctx) {
-         boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-         ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "publicAccountAuth" + "'", null, null);
-         if (c != null) {
-             if ((c.getCount() > 0) && c.moveToFirst()) {
-                 String value = c.getString(2);
-                 result = Boolean.parseBoolean(value);
-             }
-             c.close();
-         }
-         return result;
+         return JoynSettingsCache.getInstance(ctx).getBoolean("publicAccountAuth", false);
      }
 
    /**
@@ -229,20 +159,7 @@ public class JoynServiceConfiguration {
      * @return Boolean Auth type
     */
     public boolean getSSOAuth(Context ctx) {
-        boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "ssoAuth" + "'",
-                null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                String value = c.getString(2);
-                result = Boolean.parseBoolean(value);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getBoolean("ssoAuth", false);
     }
 
    /**
@@ -252,19 +169,7 @@ public class JoynServiceConfiguration {
      * @return String address
     */
     public String getProfileAddress(Context ctx) {
-        String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "profileAddress"
-                + "'", null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                result = c.getString(2);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getString("profileAddress", null);
     }
 
 
@@ -275,19 +180,7 @@ public class JoynServiceConfiguration {
      * @return String port
     */
     public String getProfileAddressPort(Context ctx) {
-        String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-        ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "profileAddressPort" + "'", null, null);
-        if (c != null) {
-            if ((c.getCount() > 0) && c.moveToFirst()) {
-                result = c.getString(2);
-            }
-            c.close();
-        }
-        return result;
+        return JoynSettingsCache.getInstance(ctx).getString("profileAddressPort", null);
     }
 
     /**
@@ -297,19 +190,7 @@ public class JoynServiceConfiguration {
      * @return String Address
      */
      public String getProfileAddressType(Context ctx) {
-         String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-         ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "ProfileAddressType" + "'", null, null);
-         if (c != null) {
-             if ((c.getCount() > 0) && c.moveToFirst()) {
-                 result = c.getString(2);
-             }
-             c.close();
-         }
-         return result;
+         return JoynSettingsCache.getInstance(ctx).getString("ProfileAddressType", null);
      }
 
 
@@ -320,19 +201,7 @@ public class JoynServiceConfiguration {
      * @return String address
       */
       public String getNABAddress(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "nabAddress"
-                + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("nabAddress", null);
       }
 
 
@@ -343,19 +212,7 @@ public class JoynServiceConfiguration {
      * @return String port
       */
       public String getNABAddressPort(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "nabAddressPort"
-                + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("nabAddressPort", null);
       }
 
      /**
@@ -365,19 +222,7 @@ public class JoynServiceConfiguration {
      * @return String Address
       */
       public String getNABAddressType(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "nabAddressType"
-                + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("nabAddressType", null);
       }
 
      /**
@@ -387,19 +232,7 @@ public class JoynServiceConfiguration {
      * @return String address
       */
       public String getPublicAccountAddress(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "publicAccountAddress" + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("publicAccountAddress", null);
       }
 
 
@@ -410,19 +243,7 @@ public class JoynServiceConfiguration {
      * @return String port
       */
       public String getPublicAccountAddressPort(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "publicAccountAddressPort" + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("publicAccountAddressPort", null);
       }
 
      /**
@@ -432,19 +253,7 @@ public class JoynServiceConfiguration {
      * @return String Address
       */
       public String getPublicAccountAddressType(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "publicAccountAddressType" + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("publicAccountAddressType", null);
       }
 
      /**
@@ -454,19 +263,7 @@ public class JoynServiceConfiguration {
       * @return address
       */
       public String getSSOAddress(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "SSOAddress"
-                + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("SSOAddress", null);
       }
 
 
@@ -477,19 +274,7 @@ public class JoynServiceConfiguration {
      * @return port
      */
       public String getSSOAddressPort(Context ctx) {
-          String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "SSOAddressPort"
-                + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  result = c.getString(2);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getString("SSOAddressPort", null);
       }
 
     /**
@@ -499,19 +284,7 @@ public class JoynServiceConfiguration {
      * @return Address
      */
      public String getSSOAddressType(Context ctx) {
-         String result = null;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-         ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='" + "SSOAddressType"
-                + "'", null, null);
-         if (c != null) {
-             if ((c.getCount() > 0) && c.moveToFirst()) {
-                 result = c.getString(2);
-             }
-             c.close();
-         }
-         return result;
+         return JoynSettingsCache.getInstance(ctx).getString("SSOAddressType", null);
      }
 
     /**
@@ -521,19 +294,7 @@ public class JoynServiceConfiguration {
      * @return String
      */
      public String getPublicUri(Context ctx) {
-         String result = "";
-         Uri databaseUri = Uri.parse("content://com.orangelabs.rcs.settings/settings");
-         ContentResolver cr = ctx.getContentResolver();
-         Cursor c = cr.query(databaseUri, null,
-                 "key" + "='" + "publicUri" + "'", null, null);
-         if (c != null) {
-             if ((c.getCount() > 0) && c.moveToFirst()) {
-                 result = c.getString(2);
-             }
-             c.close();
-         }
-
-         return result;
+         return JoynSettingsCache.getInstance(ctx).getString("publicUri", "");
      }
 
      /**
@@ -543,20 +304,7 @@ public class JoynServiceConfiguration {
       * @return Configuration State
       */
       public boolean getConfigurationState(Context ctx) {
-          boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "configurationState" + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  String value = c.getString(2);
-                  result = Boolean.parseBoolean(value);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getBoolean("configurationState", false);
       }
 
 
@@ -568,20 +316,7 @@ public class JoynServiceConfiguration {
      * @return String Service State
        */
        public static boolean getServiceState(Context ctx) {
-           boolean result = false;
-        Uri databaseUri = Uri
-                .parse("content://com.orangelabs.rcs.settings/settings");
-           ContentResolver cr = ctx.getContentResolver();
-        Cursor c = cr.query(databaseUri, null, "key" + "='"
-                + "ServiceActivated" + "'", null, null);
-           if (c != null) {
-               if ((c.getCount() > 0) && c.moveToFirst()) {
-                   String value = c.getString(2);
-                   result = Boolean.parseBoolean(value);
-               }
-               c.close();
-           }
-           return result;
+           return JoynSettingsCache.getInstance(ctx).getBoolean("ServiceActivated", false);
        }
 
        /**
@@ -599,6 +334,7 @@ public class JoynServiceConfiguration {
                String where = "key" + "='" + "DirectoryPathFiles" + "'";
               // long startTime = System.currentTimeMillis();
                cr.update(databaseUri, values, where, null);
+               JoynSettingsCache.getInstance(ctx).invalidate();
            }
        }
 
@@ -616,6 +352,7 @@ public class JoynServiceConfiguration {
               String where = "key" + "='" + "DirectoryPathPhotos" + "'";
              // long startTime = System.currentTimeMillis();
               cr.update(databaseUri, values, where, null);
+              JoynSettingsCache.getInstance(ctx).invalidate();
           }
       }
 
@@ -633,6 +370,7 @@ public class JoynServiceConfiguration {
               String where = "key" + "='" + "DirectoryPathVideos" + "'";
              // long startTime = System.currentTimeMillis();
               cr.update(databaseUri, values, where, null);
+              JoynSettingsCache.getInstance(ctx).invalidate();
           }
       }
       
@@ -656,6 +394,7 @@ public class JoynServiceConfiguration {
               String where = "key" + "='" + "servicePermitted" + "'";
               // long startTime = System.currentTimeMillis();
               cr.update(databaseUri, values, where, null);
+              JoynSettingsCache.getInstance(ctx).invalidate();
           }
       }
       
@@ -666,19 +405,6 @@ public class JoynServiceConfiguration {
        * @return Boolean
        */
       public static boolean isServicePermission(Context ctx) {
-          boolean result = false;
-          Uri databaseUri = Uri
-                  .parse("content://com.orangelabs.rcs.settings/settings");
-          ContentResolver cr = ctx.getContentResolver();
-          Cursor c = cr.query(databaseUri, null, "key" + "='"
-                  + "servicePermitted" + "'", null, null);
-          if (c != null) {
-              if ((c.getCount() > 0) && c.moveToFirst()) {
-                  String value = c.getString(2);
-                  result = Boolean.parseBoolean(value);
-              }
-              c.close();
-          }
-          return result;
+          return JoynSettingsCache.getInstance(ctx).getBoolean("servicePermitted", false);
       }
 }
@@ -33,4 +33,14 @@ public class JoynServiceException extends java.lang.Exception {
     public JoynServiceException(String error) {
         super(error);
     }
+
+    /**
+     * Constructor
+     *
+     * @param error Error message
+     * @param cause Cause of the error
+     */
+    public JoynServiceException(String error, Throwable cause) {
+        super(error, cause);
+    }
 }
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Process-wide snapshot of the RCS settings. All the settings are loaded
+ * with one query into an immutable map, which is dropped when the settings
+ * provider notifies a change and loaded again on the next read.
+ *
+ * @hide
+ */
+public final class JoynSettingsCache {
+    public static final String TAG = "TAPI-JoynSettingsCache";
+
+    /**
+     * RCS settings provider
+     */
+    public static final Uri CONTENT_URI = Uri.parse("content://com.orangelabs.rcs.settings/settings");
+
+    private static final String KEY = "key";
+
+    private static final String VALUE = "value";
+
+    private static JoynSettingsCache sInstance = null;
+
+    private final Context mContext;
+
+    /**
+     * Current snapshot, null when it must be loaded again
+     */
+    private volatile Map<String, String> mSnapshot = null;
+
+    /**
+     * Incremented on each change, so that a snapshot loaded during a change
+     * is not kept
+     */
+    private volatile int mVersion = 0;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    /**
+     * Returns the settings cache of the process
+     *
+     * @param ctx Context
+     * @return Settings cache
+     */
+    public static synchronized JoynSettingsCache getInstance(Context ctx) {
+        if (sInstance == null) {
+            Context appContext = ctx.getApplicationContext();
+            sInstance = new JoynSettingsCache(appContext != null ? appContext : ctx);
+        }
+        return sInstance;
+    }
+
+    private JoynSettingsCache(Context ctx) {
+        mContext = ctx;
+        mContext.getContentResolver().registerContentObserver(CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Returns the value of a setting
+     *
+     * @param key Setting key
+     * @param defaultValue Value returned if the setting does not exist
+     * @return Value
+     */
+    public String getString(String key, String defaultValue) {
+        Map<String, String> snapshot = getSnapshot();
+        if (!snapshot.containsKey(key)) {
+            return defaultValue;
+        }
+        return snapshot.get(key);
+    }
+
+    /**
+     * Returns the boolean value of a setting
+     *
+     * @param key Setting key
+     * @param defaultValue Value returned if the setting does not exist
+     * @return Value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Map<String, String> snapshot = getSnapshot();
+        if (!snapshot.containsKey(key)) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(snapshot.get(key));
+    }
+
+    /**
+     * Drops the snapshot, the settings are loaded again on the next read
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mVersion++;
+            mSnapshot = null;
+        }
+    }
+
+    /**
+     * Returns the current snapshot, loading it if needed. An empty map is
+     * returned without being kept if the provider is not available.
+     */
+    private Map<String, String> getSnapshot() {
+        Map<String, String> snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        int version = mVersion;
+        snapshot = load();
+        if (snapshot == null) {
+            return Collections.emptyMap();
+        }
+        synchronized (this) {
+            if (version == mVersion) {
+                mSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private Map<String, String> load() {
+        Cursor c = mContext.getContentResolver().query(CONTENT_URI, null, null, null, null);
+        if (c == null) {
+            Logger.w(TAG, "load settings failed");
+            return null;
+        }
+        HashMap<String, String> settings = new HashMap<String, String>(c.getCount() * 2);
+        try {
+            int keyIndex = c.getColumnIndex(KEY);
+            int valueIndex = c.getColumnIndex(VALUE);
+            if (keyIndex < 0 || valueIndex < 0) {
+                // Legacy layout: id, key, value
+                keyIndex = 1;
+                valueIndex = 2;
+            }
+            while (c.moveToNext()) {
+                settings.put(c.getString(keyIndex), c.getString(valueIndex));
+            }
+        } finally {
+            c.close();
+        }
+        Logger.d(TAG, "load settings %d keys", settings.size());
+        return Collections.unmodifiableMap(settings);
+    }
+}
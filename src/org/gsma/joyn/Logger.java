@@ -42,16 +42,20 @@ import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 
 //This is a common logger for MTK RCS-e solution.
+//Messages are queued in a bounded ring buffer and written to the system log by a single
+//background thread, so that writing is kept off the calling thread. Format arguments and
+//suppliers are evaluated on the calling thread, once the level is known to be enabled.
 public final class Logger {
     public static final String TAG = "[RCSe]";
 
     private Logger() {
     }; // Static common use class should not be instantiated.
 
-    private static final boolean XLOG_ENABLED = true;
-    private static boolean sIsLogEnabled = true;
+    private static volatile boolean sIsLogEnabled = true;
     // This is used for test codes
     public static final boolean IS_DEBUG = true;
     public static final String RCS_PREFS_IS_INTEGRATION_MODE = "IS_INTEGRATION_MODE";
@@ -59,6 +63,56 @@ public final class Logger {
     // This is used for launch mode or integration mode
     private static boolean sIsIntegrationMode;
 
+    /**
+     * Supplies a log message only when the level is enabled.
+     */
+    public interface MessageSupplier {
+        /**
+         * Build the message to log.
+         *
+         * @return The message
+         */
+        String get();
+    }
+
+    // Minimum level logged for the tags without a specific level, see android.util.Log
+    private static volatile int sDefaultLevel = Log.VERBOSE;
+    // Minimum level per tag
+    private static final ConcurrentHashMap<String, Integer> sTagLevels =
+            new ConcurrentHashMap<String, Integer>();
+
+    // Capacity of the ring buffer
+    private static final int BUFFER_SIZE = 512;
+
+    /**
+     * Pending log record. The records are preallocated and reused.
+     */
+    private static final class Record {
+        int level;
+        String tag;
+        String message;
+
+        void clear() {
+            tag = null;
+            message = null;
+        }
+    }
+
+    private static final Record[] sRecords = new Record[BUFFER_SIZE];
+    private static int sHead = 0;
+    private static int sCount = 0;
+    // Messages dropped because the buffer was full
+    private static long sDroppedCount = 0;
+    // Drops already reported in the log
+    private static long sReportedDroppedCount = 0;
+    private static Thread sWriterThread = null;
+
+    static {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            sRecords[i] = new Record();
+        }
+    }
+
     /**
      * Get sIsIntegrationMode.
      *
@@ -99,7 +153,7 @@ public final class Logger {
         } else {
             sIsIntegrationMode = false;
         }
-        v(TAG, "initialize(), sIsIntegrationMode = " + sIsIntegrationMode);
+        v(TAG, "initialize(), sIsIntegrationMode = %s", sIsIntegrationMode);
     }
 
     /**
@@ -109,7 +163,60 @@ public final class Logger {
      */
     public static void setLogEnabled(boolean isLogEnable) {
         sIsLogEnabled = isLogEnable;
-        sIsLogEnabled = true;
+    }
+
+    /**
+     * Set the minimum level logged for the tags without a specific level.
+     *
+     * @param level One of the android.util.Log levels.
+     */
+    public static void setDefaultLevel(int level) {
+        sDefaultLevel = level;
+    }
+
+    /**
+     * Set the minimum level logged for a tag.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param level One of the android.util.Log levels, or -1 to use the default level.
+     */
+    public static void setLevel(String tag, int level) {
+        if (level < 0) {
+            sTagLevels.remove(tag);
+        } else {
+            sTagLevels.put(tag, level);
+        }
+    }
+
+    /**
+     * Check whether a message of the given level would be logged for a tag.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param level One of the android.util.Log levels.
+     * @return True if the message would be logged.
+     */
+    public static boolean isLoggable(String tag, int level) {
+        if (!sIsLogEnabled) {
+            return false;
+        }
+        if (tag != null && !sTagLevels.isEmpty()) {
+            Integer tagLevel = sTagLevels.get(tag);
+            if (tagLevel != null) {
+                return level >= tagLevel;
+            }
+        }
+        return level >= sDefaultLevel;
+    }
+
+    /**
+     * Get the number of messages dropped because the log buffer was full.
+     *
+     * @return Number of dropped messages since the process started.
+     */
+    public static long getDroppedCount() {
+        synchronized (sRecords) {
+            return sDroppedCount;
+        }
     }
 
     /**
@@ -119,14 +226,76 @@ public final class Logger {
      * @param message The message you want to send.
      */
     public static void v(String tag, String message) {
-        if (true) {
-            if (XLOG_ENABLED) {
-                Log.v(TAG, getCombinedMessage(tag, message));
-            } else {
-                Log.v(TAG, getCombinedMessage(tag, message));
-            }
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, message);
+        }
+    }
+
+    /**
+     * Send a verbose log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void v(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a verbose log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void v(String tag, String format, int arg) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a verbose log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void v(String tag, String format, long arg) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, format(format, arg, null));
         }
+    }
 
+    /**
+     * Send a verbose log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg1 The first format argument.
+     * @param arg2 The second format argument.
+     */
+    public static void v(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Send a verbose log message built by the supplier only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param supplier The message supplier.
+     */
+    public static void v(String tag, MessageSupplier supplier) {
+        if (isLoggable(tag, Log.VERBOSE)) {
+            enqueue(Log.VERBOSE, tag, get(supplier));
+        }
     }
 
     /**
@@ -136,12 +305,75 @@ public final class Logger {
      * @param message The message you want to send.
      */
     public static void d(String tag, String message) {
-        if (true) {
-            if (XLOG_ENABLED) {
-                Log.d(TAG, getCombinedMessage(tag, message));
-            } else {
-                Log.d(TAG, getCombinedMessage(tag, message));
-            }
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, message);
+        }
+    }
+
+    /**
+     * Send a debug log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void d(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a debug log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void d(String tag, String format, int arg) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a debug log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void d(String tag, String format, long arg) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a debug log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg1 The first format argument.
+     * @param arg2 The second format argument.
+     */
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Send a debug log message built by the supplier only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param supplier The message supplier.
+     */
+    public static void d(String tag, MessageSupplier supplier) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            enqueue(Log.DEBUG, tag, get(supplier));
         }
     }
 
@@ -152,12 +384,75 @@ public final class Logger {
      * @param message The message you want to send.
      */
     public static void i(String tag, String message) {
-        if (true) {
-            if (XLOG_ENABLED) {
-                Log.i(TAG, getCombinedMessage(tag, message));
-            } else {
-                Log.i(TAG, getCombinedMessage(tag, message));
-            }
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, message);
+        }
+    }
+
+    /**
+     * Send an information log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void i(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send an information log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void i(String tag, String format, int arg) {
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send an information log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void i(String tag, String format, long arg) {
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send an information log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg1 The first format argument.
+     * @param arg2 The second format argument.
+     */
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Send an information log message built by the supplier only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param supplier The message supplier.
+     */
+    public static void i(String tag, MessageSupplier supplier) {
+        if (isLoggable(tag, Log.INFO)) {
+            enqueue(Log.INFO, tag, get(supplier));
         }
     }
 
@@ -168,12 +463,75 @@ public final class Logger {
      * @param message The message you want to send.
      */
     public static void w(String tag, String message) {
-        if (true) {
-            if (XLOG_ENABLED) {
-                Log.w(TAG, getCombinedMessage(tag, message));
-            } else {
-                Log.w(TAG, getCombinedMessage(tag, message));
-            }
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, message);
+        }
+    }
+
+    /**
+     * Send a warning log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void w(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a warning log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void w(String tag, String format, int arg) {
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a warning log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void w(String tag, String format, long arg) {
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a warning log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg1 The first format argument.
+     * @param arg2 The second format argument.
+     */
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Send a warning log message built by the supplier only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param supplier The message supplier.
+     */
+    public static void w(String tag, MessageSupplier supplier) {
+        if (isLoggable(tag, Log.WARN)) {
+            enqueue(Log.WARN, tag, get(supplier));
         }
     }
 
@@ -184,12 +542,161 @@ public final class Logger {
      * @param message The message you want to send.
      */
     public static void e(String tag, String message) {
-        if (true) {
-            if (XLOG_ENABLED) {
-                Log.e(TAG, getCombinedMessage(tag, message));
-            } else {
-                Log.e(TAG, getCombinedMessage(tag, message));
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, message);
+        }
+    }
+
+    /**
+     * Send a error log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void e(String tag, String format, Object arg) {
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a error log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void e(String tag, String format, int arg) {
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a error log message formatted with String.format() only when enabled. The
+     * argument is boxed only when the message is logged.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg The format argument.
+     */
+    public static void e(String tag, String format, long arg) {
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, format(format, arg, null));
+        }
+    }
+
+    /**
+     * Send a error log message formatted with String.format() only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param format The message format.
+     * @param arg1 The first format argument.
+     * @param arg2 The second format argument.
+     */
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Send a error log message built by the supplier only when enabled.
+     *
+     * @param tag Normally it's the class name who call this method.
+     * @param supplier The message supplier.
+     */
+    public static void e(String tag, MessageSupplier supplier) {
+        if (isLoggable(tag, Log.ERROR)) {
+            enqueue(Log.ERROR, tag, get(supplier));
+        }
+    }
+
+    /**
+     * Queue a message for the writer thread. When the buffer is full the message is
+     * dropped and counted, except errors which replace the oldest queued message, so
+     * that they are kept in order with the other messages.
+     */
+    private static void enqueue(int level, String tag, String message) {
+        synchronized (sRecords) {
+            if (sCount == BUFFER_SIZE) {
+                sDroppedCount++;
+                if (level < Log.ERROR) {
+                    return;
+                }
+                sRecords[sHead].clear();
+                sHead = (sHead + 1) % BUFFER_SIZE;
+                sCount--;
             }
+            Record record = sRecords[(sHead + sCount) % BUFFER_SIZE];
+            record.level = level;
+            record.tag = tag;
+            record.message = message;
+            sCount++;
+            if (sWriterThread == null) {
+                startWriterThread();
+            }
+            sRecords.notify();
+        }
+    }
+
+    private static void startWriterThread() {
+        sWriterThread = new Thread("RCSe-Logger") {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        };
+        sWriterThread.setDaemon(true);
+        sWriterThread.start();
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            int level;
+            String tag;
+            String message;
+            long dropped;
+            synchronized (sRecords) {
+                while (sCount == 0) {
+                    try {
+                        sRecords.wait();
+                    } catch (InterruptedException e) {
+                        // Keep on writing
+                    }
+                }
+                Record record = sRecords[sHead];
+                level = record.level;
+                tag = record.tag;
+                message = record.message;
+                record.clear();
+                sHead = (sHead + 1) % BUFFER_SIZE;
+                sCount--;
+                dropped = sDroppedCount - sReportedDroppedCount;
+                sReportedDroppedCount = sDroppedCount;
+            }
+            if (dropped > 0) {
+                Log.w(TAG, "Log buffer full, " + dropped + " messages dropped");
+            }
+            Log.println(level, TAG, getCombinedMessage(tag, message));
+        }
+    }
+
+    private static String format(String format, Object arg1, Object arg2) {
+        try {
+            return String.format(format, arg1, arg2);
+        } catch (RuntimeException e) {
+            return format;
+        }
+    }
+
+    private static String get(MessageSupplier supplier) {
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            return "Failed to build message: " + e;
         }
     }
 
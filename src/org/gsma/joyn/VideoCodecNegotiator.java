@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn;
+
+import android.text.TextUtils;
+
+/**
+ * Video codec negotiation shared by video sharing and IP call. Among the
+ * pairs of compatible local and remote codecs, the best one is selected
+ * according to a preference order of criteria. The codecs are compared by
+ * value with the ones of the previous negotiation: the local descriptors are
+ * parsed again only when the local codecs change, and an offer with the same
+ * remote codecs as the previous one returns the previous result without
+ * building or parsing the remote descriptors again.
+ *
+ * A subclass reads the values of its codec class.
+ *
+ * @param <C> Video codec class
+ * @hide
+ */
+public abstract class VideoCodecNegotiator<C> {
+    /**
+     * Criterion: highest resolution
+     */
+    public static final int PREFER_RESOLUTION = 0;
+
+    /**
+     * Criterion: highest H264 level
+     */
+    public static final int PREFER_PROFILE_LEVEL = 1;
+
+    /**
+     * Criterion: highest bit rate
+     */
+    public static final int PREFER_BIT_RATE = 2;
+
+    /**
+     * Criterion: highest clock rate, or sample rate for audio codecs
+     */
+    public static final int PREFER_CLOCK_RATE = 3;
+
+    /**
+     * Default preference order
+     */
+    public static final int[] DEFAULT_PREFERENCE = {
+        PREFER_RESOLUTION, PREFER_PROFILE_LEVEL, PREFER_BIT_RATE, PREFER_CLOCK_RATE
+    };
+
+    /**
+     * Values of a codec, with the H264 profile-level-id read from its parameters
+     */
+    private static class Descriptor {
+        final String encoding;
+        final int payload;
+        final int clockRate;
+        final int frameRate;
+        final int bitRate;
+        final int width;
+        final int height;
+        final String parameters;
+        final String profileLevelId;
+        final int level;
+
+        Descriptor(String encoding, int payload, int clockRate, int frameRate, int bitRate,
+                int width, int height, String parameters, String profileLevelId) {
+            this.encoding = encoding;
+            this.payload = payload;
+            this.clockRate = clockRate;
+            this.frameRate = frameRate;
+            this.bitRate = bitRate;
+            this.width = width;
+            this.height = height;
+            this.parameters = parameters;
+            this.profileLevelId = profileLevelId;
+            this.level = getLevel(profileLevelId);
+        }
+
+        boolean isCompatible(Descriptor remote) {
+            if (encoding == null || !encoding.equalsIgnoreCase(remote.encoding)
+                    || !matches(width, remote.width) || !matches(height, remote.height)) {
+                return false;
+            }
+            if (H264Config.CODEC_NAME.equalsIgnoreCase(encoding)) {
+                return (profileLevelId == null) ? (remote.profileLevelId == null)
+                        : profileLevelId.equalsIgnoreCase(remote.profileLevelId);
+            }
+            return (parameters == null) ? (remote.parameters == null)
+                    : parameters.equalsIgnoreCase(remote.parameters);
+        }
+
+        /**
+         * Returns the level_idc byte of a profile-level-id, 0 if unknown
+         */
+        private static int getLevel(String profileLevelId) {
+            if (profileLevelId == null || profileLevelId.length() != 6) {
+                return 0;
+            }
+            try {
+                return Integer.parseInt(profileLevelId.substring(4), 16);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    private final int[] preference;
+
+    /**
+     * Local codecs of the last negotiation
+     */
+    private Descriptor[] lastLocal = null;
+
+    /**
+     * Remote codecs of the last negotiation
+     */
+    private Descriptor[] lastRemote = null;
+
+    /**
+     * Index of the last selected remote codec, -1 if none
+     */
+    private int lastResult = -1;
+
+    /**
+     * Constructor
+     *
+     * @param preference Criteria by decreasing importance, see PREFER_* constants
+     */
+    protected VideoCodecNegotiator(int[] preference) {
+        this.preference = preference.clone();
+    }
+
+    protected abstract String getEncoding(C codec);
+
+    protected abstract int getPayloadType(C codec);
+
+    protected abstract int getClockRate(C codec);
+
+    protected abstract int getFrameRate(C codec);
+
+    protected abstract int getBitRate(C codec);
+
+    protected abstract int getVideoWidth(C codec);
+
+    protected abstract int getVideoHeight(C codec);
+
+    protected abstract String getParameters(C codec);
+
+    protected abstract String getProfileLevelId(C codec);
+
+    /**
+     * Selects the best video codec offered by the remote which is supported
+     * locally. Pairs of equal rank are ordered by the local then by the remote order.
+     *
+     * @param local Codecs supported locally, in local order of preference
+     * @param remote Codecs offered by the remote
+     * @return Remote codec or null if no codec is compatible
+     */
+    public synchronized C negotiate(C[] local, C[] remote) {
+        if (local == null || remote == null) {
+            return null;
+        }
+        boolean sameLocal = isSame(lastLocal, local);
+        if (!sameLocal) {
+            lastLocal = describe(local);
+        }
+        if (!sameLocal || !isSame(lastRemote, remote)) {
+            Descriptor[] remoteDescriptors = describe(remote);
+            int best = -1;
+            Descriptor bestLocal = null;
+            for (Descriptor localDescriptor : lastLocal) {
+                for (int i = 0; i < remoteDescriptors.length; i++) {
+                    if (!localDescriptor.isCompatible(remoteDescriptors[i])) {
+                        continue;
+                    }
+                    if (best < 0 || rank(localDescriptor, remoteDescriptors[i],
+                            bestLocal, remoteDescriptors[best]) > 0) {
+                        best = i;
+                        bestLocal = localDescriptor;
+                    }
+                }
+            }
+            lastRemote = remoteDescriptors;
+            lastResult = best;
+        }
+        return (lastResult >= 0) ? remote[lastResult] : null;
+    }
+
+    /**
+     * Forgets the parsed codecs and the last result
+     */
+    public synchronized void reset() {
+        lastLocal = null;
+        lastRemote = null;
+        lastResult = -1;
+    }
+
+    /**
+     * Returns true if the criterion is in the preference order
+     *
+     * @param criterion Criterion, see PREFER_* constants
+     * @return Boolean
+     */
+    protected boolean prefers(int criterion) {
+        for (int c : preference) {
+            if (c == criterion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if two values match, 0 meaning any
+     *
+     * @param local Local value
+     * @param remote Remote value
+     * @return Boolean
+     */
+    protected static boolean matches(int local, int remote) {
+        return local == remote || local == 0 || remote == 0;
+    }
+
+    /**
+     * Returns true if the codecs have the same values as the descriptors of
+     * the last negotiation, so that a re-INVITE offering the same codecs, or
+     * a new array of the same local codecs, does not negotiate again
+     */
+    private boolean isSame(Descriptor[] descriptors, C[] codecs) {
+        if (descriptors == null || codecs.length != descriptors.length) {
+            return false;
+        }
+        for (int i = 0; i < codecs.length; i++) {
+            if (!isSame(descriptors[i], codecs[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the codec has the values of the descriptor
+     */
+    private boolean isSame(Descriptor descriptor, C codec) {
+        return descriptor.payload == getPayloadType(codec)
+                && descriptor.clockRate == getClockRate(codec)
+                && descriptor.frameRate == getFrameRate(codec)
+                && descriptor.bitRate == getBitRate(codec)
+                && descriptor.width == getVideoWidth(codec)
+                && descriptor.height == getVideoHeight(codec)
+                && TextUtils.equals(descriptor.encoding, getEncoding(codec))
+                && TextUtils.equals(descriptor.parameters, getParameters(codec));
+    }
+
+    private Descriptor describe(C codec) {
+        String encoding = getEncoding(codec);
+        return new Descriptor(encoding, getPayloadType(codec), getClockRate(codec),
+                getFrameRate(codec), getBitRate(codec), getVideoWidth(codec),
+                getVideoHeight(codec), getParameters(codec),
+                H264Config.CODEC_NAME.equalsIgnoreCase(encoding) ? getProfileLevelId(codec) : null);
+    }
+
+    private Descriptor[] describe(C[] codecs) {
+        Descriptor[] descriptors = new Descriptor[codecs.length];
+        for (int i = 0; i < codecs.length; i++) {
+            descriptors[i] = describe(codecs[i]);
+        }
+        return descriptors;
+    }
+
+    /**
+     * Returns a positive value if the pair (local1, remote1) is preferred
+     * to the pair (local2, remote2)
+     */
+    private int rank(Descriptor local1, Descriptor remote1, Descriptor local2, Descriptor remote2) {
+        for (int criterion : preference) {
+            long value1 = getValue(criterion, local1, remote1);
+            long value2 = getValue(criterion, local2, remote2);
+            if (value1 != value2) {
+                return (value1 > value2) ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+
+    private static long getValue(int criterion, Descriptor local, Descriptor remote) {
+        switch (criterion) {
+            case PREFER_RESOLUTION:
+                return (long) resolve(local.width, remote.width) * resolve(local.height, remote.height);
+            case PREFER_PROFILE_LEVEL:
+                return remote.level;
+            case PREFER_BIT_RATE:
+                return Math.min(local.bitRate, remote.bitRate);
+            case PREFER_CLOCK_RATE:
+                return remote.clockRate;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the negotiated value of a dimension, 0 meaning any
+     */
+    private static int resolve(int local, int remote) {
+        return (local == 0) ? remote : local;
+    }
+}
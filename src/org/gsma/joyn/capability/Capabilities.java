@@ -18,10 +18,12 @@
 
 package org.gsma.joyn.capability;
 
-import java.util.ArrayList;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.gsma.joyn.Logger;
 
@@ -42,8 +44,50 @@ public class Capabilities implements Parcelable {
 
     public static final String TAG = "Capabilities";
 
+    /**
+     * Marker of the compact parcel format, in place of the first flag of the
+     * legacy format which is always 0 or 1. Both formats are read; the compact
+     * one is written only once the peer is known to read it, see
+     * {@link #setCompactFormatEnabled(boolean)}.
+     */
+    private static final int PARCEL_FORMAT_COMPACT_V1 = 0x43500001;
+
+    /**
+     * True if the peer reads the compact parcel format
+     */
+    private static volatile boolean sCompactFormat = false;
+
+    /**
+     * Bits of the flags word of the compact parcel format
+     */
+    private static final int FLAG_IMAGE_SHARING = 1 << 0;
+    private static final int FLAG_VIDEO_SHARING = 1 << 1;
+    private static final int FLAG_IM_SESSION = 1 << 2;
+    private static final int FLAG_FILE_TRANSFER = 1 << 3;
+    private static final int FLAG_GEOLOC_PUSH = 1 << 4;
+    private static final int FLAG_IP_VOICE_CALL = 1 << 5;
+    private static final int FLAG_IP_VIDEO_CALL = 1 << 6;
+    private static final int FLAG_AUTOMATA = 1 << 7;
+    private static final int FLAG_FILE_TRANSFER_HTTP = 1 << 8;
+    private static final int FLAG_RCS_CONTACT = 1 << 9;
+    private static final int FLAG_INTEGRATED_MESSAGING_MODE = 1 << 10;
+    private static final int FLAG_CS_VIDEO = 1 << 11;
+    private static final int FLAG_BURN_AFTER_READ = 1 << 12;
+
+    /**
+     * Shared instances, see {@link #share(Capabilities)}
+     */
+    private static final WeakHashMap<Capabilities, WeakReference<Capabilities>> sSharedInstances =
+            new WeakHashMap<Capabilities, WeakReference<Capabilities>>();
+
+    /**
+     * True if this instance is shared and can't be modified
+     */
+    private boolean shared = false;
+
     public void setImageSharingSupport(boolean imageSharing) {
         Logger.i(TAG, "setImageSharingSupport entry" + imageSharing);
+        checkNotShared();
         this.imageSharing = imageSharing;
     }
 
@@ -54,6 +98,7 @@ public class Capabilities implements Parcelable {
 
     public void setVideoSharingSupport(boolean videoSharing) {
         Logger.i(TAG, "setVideoSharingSupport entry" + videoSharing);
+        checkNotShared();
         this.videoSharing = videoSharing;
     }
 
@@ -111,6 +156,7 @@ public class Capabilities implements Parcelable {
 
     public void setIntegratedMessagingMode(boolean integratedMessagingMode) {
         Logger.i(TAG, "setIntegratedMessagingMode entry" + integratedMessagingMode);
+        checkNotShared();
         this.integratedMessagingMode = integratedMessagingMode;
     }
 
@@ -199,13 +245,28 @@ public class Capabilities implements Parcelable {
      * @hide
      */
     public Capabilities(Parcel source) {
-        this.imageSharing = source.readInt() != 0;
+        int first = source.readInt();
+        if (first == PARCEL_FORMAT_COMPACT_V1) {
+            setFlags(source.readInt());
+            int count = source.readInt();
+            this.extensions = new HashSet<String>(Math.max(count * 2, 4));
+            for (int i = 0; i < count; i++) {
+                String ext = source.readString();
+                this.extensions.add((ext != null) ? ext.intern() : null);
+            }
+            return;
+        }
+
+        // Legacy format, one int per flag
+        this.imageSharing = first != 0;
         this.videoSharing = source.readInt() != 0;
         this.imSession = source.readInt() != 0;
         this.fileTransfer = source.readInt() != 0;
-        List<String> exts = new ArrayList<String>();
-        source.readStringList(exts);
-        this.extensions = new HashSet<String>(exts);
+        int count = source.readInt();
+        this.extensions = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            this.extensions.add(source.readString());
+        }
         this.geolocPush = source.readInt() != 0;
         this.ipVoiceCall = source.readInt() != 0;
         this.ipVideoCall = source.readInt() != 0;
@@ -217,6 +278,114 @@ public class Capabilities implements Parcelable {
         this.burnAfterRead = source.readInt() != 0;
     }
 
+    /**
+     * Copy constructor
+     *
+     * @param caps Capabilities to copy
+     * @param shared True for a shared instance, which can't be modified
+     */
+    private Capabilities(Capabilities caps, boolean shared) {
+        setFlags(caps.getFlags());
+        if (caps.extensions != null) {
+            HashSet<String> exts = new HashSet<String>(Math.max(caps.extensions.size() * 2, 4));
+            for (String ext : caps.extensions) {
+                exts.add((ext != null) ? ext.intern() : null);
+            }
+            this.extensions = shared ? Collections.unmodifiableSet(exts) : exts;
+        } else {
+            this.extensions = shared ? Collections.<String>emptySet() : new HashSet<String>();
+        }
+        this.shared = shared;
+    }
+
+    /**
+     * Returns a modifiable copy of the given capabilities
+     *
+     * @param caps Capabilities, may be null
+     * @return Copy or null
+     * @hide
+     */
+    public static Capabilities copy(Capabilities caps) {
+        return (caps != null) ? new Capabilities(caps, false) : null;
+    }
+
+    /**
+     * Returns an unmodifiable instance equal to the given capabilities. Equal
+     * capabilities share the same instance, so that many contacts with the same
+     * capabilities don't keep one copy each.
+     *
+     * @param caps Capabilities, may be null
+     * @return Shared capabilities or null
+     * @hide
+     */
+    public static Capabilities share(Capabilities caps) {
+        if (caps == null || caps.shared) {
+            return caps;
+        }
+        synchronized (sSharedInstances) {
+            WeakReference<Capabilities> ref = sSharedInstances.get(caps);
+            Capabilities result = (ref != null) ? ref.get() : null;
+            if (result == null) {
+                result = new Capabilities(caps, true);
+                sSharedInstances.put(result, new WeakReference<Capabilities>(result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Enables the compact parcel format, when the service reads it. The
+     * legacy format is written by default, since the RCS core of older
+     * releases only reads that one.
+     *
+     * @param enabled True if the peer reads the compact format
+     * @see org.gsma.joyn.Build.VERSION_CODES#COMPACT_CAPABILITIES
+     * @hide
+     */
+    public static void setCompactFormatEnabled(boolean enabled) {
+        sCompactFormat = enabled;
+    }
+
+    private void checkNotShared() {
+        if (shared) {
+            throw new UnsupportedOperationException("Shared capabilities can't be modified");
+        }
+    }
+
+    private int getFlags() {
+        int flags = 0;
+        flags |= imageSharing ? FLAG_IMAGE_SHARING : 0;
+        flags |= videoSharing ? FLAG_VIDEO_SHARING : 0;
+        flags |= imSession ? FLAG_IM_SESSION : 0;
+        flags |= fileTransfer ? FLAG_FILE_TRANSFER : 0;
+        flags |= geolocPush ? FLAG_GEOLOC_PUSH : 0;
+        flags |= ipVoiceCall ? FLAG_IP_VOICE_CALL : 0;
+        flags |= ipVideoCall ? FLAG_IP_VIDEO_CALL : 0;
+        flags |= automata ? FLAG_AUTOMATA : 0;
+        flags |= fileTransferHttpSupported ? FLAG_FILE_TRANSFER_HTTP : 0;
+        flags |= rcsContact ? FLAG_RCS_CONTACT : 0;
+        flags |= integratedMessagingMode ? FLAG_INTEGRATED_MESSAGING_MODE : 0;
+        flags |= csVideoSupported ? FLAG_CS_VIDEO : 0;
+        flags |= burnAfterRead ? FLAG_BURN_AFTER_READ : 0;
+        return flags;
+    }
+
+    private void setFlags(int flags) {
+        this.imageSharing = (flags & FLAG_IMAGE_SHARING) != 0;
+        this.videoSharing = (flags & FLAG_VIDEO_SHARING) != 0;
+        this.imSession = (flags & FLAG_IM_SESSION) != 0;
+        this.fileTransfer = (flags & FLAG_FILE_TRANSFER) != 0;
+        this.geolocPush = (flags & FLAG_GEOLOC_PUSH) != 0;
+        this.ipVoiceCall = (flags & FLAG_IP_VOICE_CALL) != 0;
+        this.ipVideoCall = (flags & FLAG_IP_VIDEO_CALL) != 0;
+        this.automata = (flags & FLAG_AUTOMATA) != 0;
+        this.fileTransferHttpSupported = (flags & FLAG_FILE_TRANSFER_HTTP) != 0;
+        this.rcsContact = (flags & FLAG_RCS_CONTACT) != 0;
+        this.integratedMessagingMode = (flags & FLAG_INTEGRATED_MESSAGING_MODE) != 0;
+        this.csVideoSupported = (flags & FLAG_CS_VIDEO) != 0;
+        this.burnAfterRead = (flags & FLAG_BURN_AFTER_READ) != 0;
+    }
+
     /**
      * Describe the kinds of special objects contained in this Parcelable's
      * marshalled representation
@@ -236,15 +405,19 @@ public class Capabilities implements Parcelable {
      * @hide
      */
     public void writeToParcel(Parcel dest, int flags) {
+        if (sCompactFormat) {
+            dest.writeInt(PARCEL_FORMAT_COMPACT_V1);
+            dest.writeInt(getFlags());
+            writeExtensions(dest);
+            return;
+        }
+
+        // Legacy format, one int per flag
         dest.writeInt(imageSharing ? 1 : 0);
         dest.writeInt(videoSharing ? 1 : 0);
         dest.writeInt(imSession ? 1 : 0);
         dest.writeInt(fileTransfer ? 1 : 0);
-        if (extensions != null) {
-            List<String> exts = new ArrayList<String>();
-            exts.addAll(extensions);
-            dest.writeStringList(exts);
-        }
+        writeExtensions(dest);
         dest.writeInt(geolocPush ? 1 : 0);
         dest.writeInt(ipVoiceCall ? 1 : 0);
         dest.writeInt(ipVideoCall ? 1 : 0);
@@ -256,6 +429,53 @@ public class Capabilities implements Parcelable {
         dest.writeInt(burnAfterRead ? 1 : 0);
     }
 
+    /**
+     * Writes the extensions in the same layout as Parcel.writeStringList(),
+     * sorted so that equal capabilities give identical parcels. A null set is
+     * written as -1, which readStringList() reads as an empty list.
+     */
+    private void writeExtensions(Parcel dest) {
+        if (extensions != null) {
+            String[] exts = extensions.toArray(new String[extensions.size()]);
+            Arrays.sort(exts);
+            dest.writeInt(exts.length);
+            for (String ext : exts) {
+                dest.writeString(ext);
+            }
+        } else {
+            dest.writeInt(-1);
+        }
+    }
+
+    /**
+     * Returns true if the capabilities are the same
+     *
+     * @param o Object to compare
+     * @return Boolean
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Capabilities)) {
+            return false;
+        }
+        Capabilities caps = (Capabilities) o;
+        if (getFlags() != caps.getFlags()) {
+            return false;
+        }
+        Set<String> exts = (extensions != null) ? extensions : Collections.<String>emptySet();
+        Set<String> otherExts = (caps.extensions != null)
+                ? caps.extensions : Collections.<String>emptySet();
+        return exts.equals(otherExts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getFlags() + ((extensions != null) ? extensions.hashCode() : 0);
+    }
+
     /**
      * Parcelable creator
      *
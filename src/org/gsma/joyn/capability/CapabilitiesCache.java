@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn.capability;
+
+import java.util.HashMap;
+
+import android.os.SystemClock;
+
+/**
+ * In-process cache of contact capabilities. Entries expire after the
+ * capability cache expiration provisioned by the MNO and are refreshed
+ * by capabilities received from the stack.
+ */
+class CapabilitiesCache {
+    /**
+     * Default expiration period in seconds, used until the provisioned
+     * value is known
+     */
+    static final int DEFAULT_EXPIRATION = 60;
+
+    /**
+     * Cached entry. The capabilities may be null when the stack does not
+     * know the contact, so that unknown contacts are not queried again.
+     */
+    private static class Entry {
+        final Capabilities capabilities;
+        final long timestamp;
+
+        Entry(Capabilities capabilities, long timestamp) {
+            this.capabilities = capabilities;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    /**
+     * Expiration period in milliseconds, 0 disables the cache
+     */
+    private long mExpiration = DEFAULT_EXPIRATION * 1000L;
+
+    /**
+     * Set the expiration period
+     *
+     * @param seconds Expiration period in seconds, 0 or less disables the cache
+     */
+    synchronized void setExpiration(int seconds) {
+        mExpiration = (seconds > 0) ? (seconds * 1000L) : 0;
+        if (mExpiration == 0) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Returns true if a valid entry exists for the contact
+     *
+     * @param contact Contact
+     * @return Boolean
+     */
+    synchronized boolean contains(String contact) {
+        return getEntry(contact) != null;
+    }
+
+    /**
+     * Returns the cached capabilities of a contact. Use {@link #contains}
+     * to distinguish a missing entry from an unknown contact. The shared
+     * instance is returned, it can't be modified.
+     *
+     * @param contact Contact
+     * @return Capabilities or null
+     */
+    synchronized Capabilities get(String contact) {
+        Entry entry = getEntry(contact);
+        return (entry != null) ? entry.capabilities : null;
+    }
+
+    /**
+     * Store the capabilities of a contact. The shared form is stored, so that
+     * contacts with the same capabilities use the same instance.
+     *
+     * @param contact Contact
+     * @param capabilities Capabilities, may be null
+     */
+    synchronized void put(String contact, Capabilities capabilities) {
+        if (contact == null || mExpiration == 0) {
+            return;
+        }
+        mEntries.put(contact, new Entry(Capabilities.share(capabilities),
+                SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Remove the entry of a contact
+     *
+     * @param contact Contact
+     */
+    synchronized void invalidate(String contact) {
+        mEntries.remove(contact);
+    }
+
+    /**
+     * Remove all entries
+     */
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    private Entry getEntry(String contact) {
+        Entry entry = mEntries.get(contact);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.timestamp >= mExpiration) {
+            mEntries.remove(contact);
+            return null;
+        }
+        return entry;
+    }
+}
@@ -18,9 +18,15 @@
 
 package org.gsma.joyn.capability;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.gsma.joyn.Build;
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 import org.gsma.joyn.JoynContactFormatException;
 import org.gsma.joyn.JoynService;
@@ -32,10 +38,8 @@ import org.gsma.joyn.JoynServiceRegistrationListener;
 
 import org.gsma.joyn.Logger;
 
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.ServiceConnection;
 import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
@@ -73,6 +77,21 @@ public class CapabilityService extends JoynService {
 
     public static final String TAG = "CapabilityService";
 
+    /**
+     * Local cache of contact capabilities
+     */
+    private final CapabilitiesCache cache = new CapabilitiesCache();
+
+    /**
+     * Listener keeping the local cache up to date
+     */
+    private final CapabilitiesListener cacheListener = new CapabilitiesListener() {
+        public void onCapabilitiesReceived(String contact, Capabilities capabilities) {
+            Logger.i(TAG, "onCapabilitiesReceived update cache " + contact);
+            cache.put(contact, capabilities);
+        }
+    };
+
     /**
      * Constructor
      *
@@ -94,24 +113,16 @@ public class CapabilityService extends JoynService {
             throw new SecurityException(" Required permission ANDROID_READ_CONTACTS");
         }*/
         Logger.i(TAG, "connect() entry");
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        intent.setAction(ICapabilityService.class.getName());
-        ctx.bindService(intent, apiConnection, 0);
-
+        CoreServiceConnection.getInstance(ctx, ICapabilityService.class.getName()).register(apiConnection);
     }
 
     /**
      * Disconnects from the API
      */
     public void disconnect() {
-        try {
-            Logger.i(TAG, "disconnect() entry");
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        Logger.i(TAG, "disconnect() entry");
+        unregisterCacheListener();
+        CoreServiceConnection.getInstance(ctx, ICapabilityService.class.getName()).unregister(apiConnection);
     }
 
     /**
@@ -128,10 +139,9 @@ public class CapabilityService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
             Logger.i(TAG, "onServiceConnected entry");
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getCapabilitiesServiceBinder();
@@ -139,20 +149,78 @@ public class CapabilityService extends JoynService {
                 e1.printStackTrace();
             }
             setApi(ICapabilityService.Stub.asInterface(binder));
+            updateParcelFormat();
+            registerCacheListener();
             if (serviceListener != null) {
                 serviceListener.onServiceConnected();
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
+        public void onCoreServiceDisconnected() {
             Logger.i(TAG, "onServiceDisconnected entry");
             setApi(null);
+            version = null;
+            Capabilities.setCompactFormatEnabled(false);
+            cache.clear();
             if (serviceListener != null) {
                 serviceListener.onServiceDisconnected(Error.CONNECTION_LOST);
             }
         }
     };
 
+    /**
+     * Writes the capabilities in the compact parcel format if the service reads it
+     */
+    private void updateParcelFormat() {
+        boolean compact = false;
+        try {
+            compact = getServiceVersion() >= Build.VERSION_CODES.COMPACT_CAPABILITIES;
+        } catch (JoynServiceException e) {
+            Logger.w(TAG, "updateParcelFormat failed " + e);
+        }
+        Capabilities.setCompactFormatEnabled(compact);
+    }
+
+    /**
+     * Register the cache listener on any contact
+     */
+    private void registerCacheListener() {
+        if (api != null) {
+            try {
+                api.addCapabilitiesListener(cacheListener);
+            } catch (RemoteException e) {
+                Logger.e(TAG, "registerCacheListener failed " + e);
+            }
+        }
+    }
+
+    /**
+     * Unregister the cache listener
+     */
+    private void unregisterCacheListener() {
+        if (api != null) {
+            try {
+                api.removeCapabilitiesListener(cacheListener);
+            } catch (RemoteException e) {
+                Logger.e(TAG, "unregisterCacheListener failed " + e);
+            }
+        }
+        cache.clear();
+    }
+
+    /**
+     * Set the period of time the capabilities of a contact are cached locally.
+     * The value is provisioned by the MNO, see
+     * com.android.ims.ImsConfig.ConfigConstants#CAPABILITIES_CACHE_EXPIRATION.
+     *
+     * @param seconds Expiration period in seconds, 0 disables the local cache
+     * @hide
+     */
+    public void setCapabilitiesCacheExpiration(int seconds) {
+        Logger.i(TAG, "setCapabilitiesCacheExpiration " + seconds);
+        cache.setExpiration(seconds);
+    }
+
     /**
      * Returns the capabilities supported by the local end user. The supported
      * capabilities are fixed by the MNO and read during the provisioning.
@@ -181,15 +249,22 @@ public class CapabilityService extends JoynService {
      * supported an exception is thrown.
      *
      * @param contact Contact
-     * @return Capabilities
+     * @return Capabilities, shared and unmodifiable, see {@link Capabilities#copy}
      * @throws JoynServiceException
      * @throws JoynContactFormatException
      */
     public Capabilities getContactCapabilities(String contact) throws JoynServiceException, JoynContactFormatException {
         Logger.i(TAG, "getContactCapabilities entry" + contact);
         if (api != null) {
+            synchronized (cache) {
+                if (cache.contains(contact)) {
+                    return cache.get(contact);
+                }
+            }
             try {
-                return api.getContactCapabilities(contact);
+                Capabilities capabilities = Capabilities.share(api.getContactCapabilities(contact));
+                cache.put(contact, capabilities);
+                return capabilities;
             } catch (Exception e) {
                 throw new JoynServiceException(e.getMessage());
             }
@@ -198,6 +273,62 @@ public class CapabilityService extends JoynService {
         }
     }
 
+    /**
+     * Returns the capabilities of a set of contacts from the local database. This
+     * method doesnt request any network update to the remote contacts. Capabilities
+     * already known in the process are returned without querying the service, the
+     * other ones are read from the service in a single call and kept until the
+     * provisioned cache expiration or until new capabilities are received for the
+     * contact. A service which doesn't support the batch call is queried contact
+     * by contact.
+     *
+     * @param contacts Set of contacts
+     * @return Map of capabilities per contact, shared and unmodifiable, the value is null
+     *         for an unknown contact
+     * @throws JoynServiceException
+     * @throws JoynContactFormatException
+     */
+    public Map<String, Capabilities> getContactCapabilities(Set<String> contacts)
+            throws JoynServiceException, JoynContactFormatException {
+        Logger.i(TAG, "getContactCapabilities entry size " + contacts.size());
+        if (api != null) {
+            Map<String, Capabilities> result = new HashMap<String, Capabilities>(contacts.size());
+            List<String> misses = new ArrayList<String>();
+            synchronized (cache) {
+                for (String contact : contacts) {
+                    if (cache.contains(contact)) {
+                        result.put(contact, cache.get(contact));
+                    } else {
+                        misses.add(contact);
+                    }
+                }
+            }
+            if (!misses.isEmpty()) {
+                try {
+                    List<Capabilities> capabilities = api.getContactsCapabilities(misses);
+                    if (capabilities == null || capabilities.size() != misses.size()) {
+                        // A service without batch support leaves the reply empty
+                        capabilities = new ArrayList<Capabilities>(misses.size());
+                        for (String contact : misses) {
+                            capabilities.add(api.getContactCapabilities(contact));
+                        }
+                    }
+                    for (int i = 0; i < misses.size(); i++) {
+                        Capabilities shared = Capabilities.share(capabilities.get(i));
+                        cache.put(misses.get(i), shared);
+                        result.put(misses.get(i), shared);
+                    }
+                } catch (Exception e) {
+                    throw new JoynServiceException(e.getMessage());
+                }
+            }
+            Logger.i(TAG, "getContactCapabilities misses " + misses.size());
+            return result;
+        } else {
+            throw new JoynServiceNotAvailableException();
+        }
+    }
+
     /**
      * Requests capabilities to a remote contact. This method initiates in background
      * a new capability request to the remote contact by sending a SIP OPTIONS. The
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Group chat event listener which aggregates the per contact delivery
+ * reports. Instead of one callback per recipient and per message, the
+ * reports received during a window are delivered together, once per window,
+ * with the contacts grouped per message.
+ */
+public abstract class AggregatedGroupChatListener extends GroupChatListener {
+    /**
+     * Default aggregation window in milliseconds
+     */
+    public static final long DEFAULT_WINDOW = 500;
+
+    /**
+     * Reports received for a message during a window
+     */
+    public static class MessageReports {
+        private final String msgId;
+
+        private final Set<String> delivered = new LinkedHashSet<String>();
+
+        private final Set<String> displayed = new LinkedHashSet<String>();
+
+        private final Set<String> failed = new LinkedHashSet<String>();
+
+        MessageReports(String msgId) {
+            this.msgId = msgId;
+        }
+
+        /**
+         * Returns the message ID
+         *
+         * @return Message ID
+         */
+        public String getMessageId() {
+            return msgId;
+        }
+
+        /**
+         * Returns the contacts which have received the message during the window
+         *
+         * @return Set of contacts
+         */
+        public Set<String> getDeliveredContacts() {
+            return Collections.unmodifiableSet(delivered);
+        }
+
+        /**
+         * Returns the contacts which have displayed the message during the window
+         *
+         * @return Set of contacts
+         */
+        public Set<String> getDisplayedContacts() {
+            return Collections.unmodifiableSet(displayed);
+        }
+
+        /**
+         * Returns the contacts to which the message has failed during the window
+         *
+         * @return Set of contacts
+         */
+        public Set<String> getFailedContacts() {
+            return Collections.unmodifiableSet(failed);
+        }
+
+        /**
+         * Returns the number of delivery reports
+         *
+         * @return Number of contacts
+         */
+        public int getDeliveredCount() {
+            return delivered.size();
+        }
+
+        /**
+         * Returns the number of displayed reports
+         *
+         * @return Number of contacts
+         */
+        public int getDisplayedCount() {
+            return displayed.size();
+        }
+
+        /**
+         * Returns the number of failure reports
+         *
+         * @return Number of contacts
+         */
+        public int getFailedCount() {
+            return failed.size();
+        }
+    }
+
+    private final long window;
+
+    private final Handler handler;
+
+    /**
+     * Reports of the current window, per message in arrival order
+     */
+    private LinkedHashMap<String, MessageReports> pending =
+            new LinkedHashMap<String, MessageReports>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor, the reports are delivered on the main thread at the
+     * end of the default window
+     */
+    public AggregatedGroupChatListener() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor, the reports are delivered on the main thread
+     *
+     * @param window Aggregation window in milliseconds
+     */
+    public AggregatedGroupChatListener(long window) {
+        this(window, Looper.getMainLooper());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param window Aggregation window in milliseconds
+     * @param looper Looper of the thread on which the reports are delivered
+     */
+    public AggregatedGroupChatListener(long window, Looper looper) {
+        this.window = window;
+        this.handler = new Handler(looper);
+    }
+
+    /**
+     * Callback called once per window with the delivery reports received
+     * during the window
+     *
+     * @param reports Reports per message, in the order of the first report
+     */
+    public abstract void onReportsAggregated(List<MessageReports> reports);
+
+    @Override
+    public final void onReportMessageDeliveredContact(String msgId, String contact) {
+        synchronized (this) {
+            getReports(msgId).delivered.add(contact);
+        }
+    }
+
+    @Override
+    public final void onReportMessageDisplayedContact(String msgId, String contact) {
+        synchronized (this) {
+            getReports(msgId).displayed.add(contact);
+        }
+    }
+
+    @Override
+    public final void onReportMessageFailedContact(String msgId, String contact) {
+        synchronized (this) {
+            getReports(msgId).failed.add(contact);
+        }
+    }
+
+    /**
+     * Delivers the pending reports now instead of at the end of the window
+     */
+    public void flush() {
+        List<MessageReports> reports;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            if (pending.isEmpty()) {
+                return;
+            }
+            reports = new ArrayList<MessageReports>(pending.values());
+            pending = new LinkedHashMap<String, MessageReports>();
+        }
+        onReportsAggregated(reports);
+    }
+
+    /**
+     * Returns the reports of a message in the current window, the window
+     * starts with the first report
+     */
+    private MessageReports getReports(String msgId) {
+        if (pending.isEmpty()) {
+            handler.postDelayed(flushRunnable, window);
+        }
+        MessageReports reports = pending.get(msgId);
+        if (reports == null) {
+            reports = new MessageReports(msgId);
+            pending.put(msgId, reports);
+        }
+        return reports;
+    }
+}
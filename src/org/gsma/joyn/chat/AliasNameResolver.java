@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn.chat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gsma.joyn.Logger;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Resolver of the alias names of the contacts, which is the last non empty
+ * display name received from a contact in chat messages. The names are
+ * kept in a bounded cache, loaded in one query for the contacts shown in a
+ * list with {@link #preload}. When the message table of the stack notifies
+ * the change of a message, only the name of its contact is dropped, so that
+ * the delivery and display reports of a conversation don't empty the cache.
+ * A change which doesn't name a message, or of a deleted message, clears the
+ * cache.
+ */
+public final class AliasNameResolver {
+    public static final String TAG = "TAPI-AliasNameResolver";
+
+    /**
+     * Maximum number of contacts in the cache
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * Maximum number of contacts per query
+     */
+    private static final int MAX_QUERY_CONTACTS = 200;
+
+    /**
+     * Message table of the stack
+     */
+    private static final Uri MESSAGE_URI = Uri.parse("content://com.orangelabs.rcs.chat/message");
+
+    private static AliasNameResolver sInstance = null;
+
+    private final ContentResolver mResolver;
+
+    /**
+     * Alias per contact in least recently used order, empty if the contact
+     * has no alias
+     */
+    private final LinkedHashMap<String, String> mAliases =
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Incremented when names are dropped, so that the names loaded before
+     * are not stored
+     */
+    private int mGeneration = 0;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            clear();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate(uri);
+        }
+    };
+
+    /**
+     * Returns the resolver of the process
+     *
+     * @param ctx Context
+     * @return Resolver
+     */
+    public static synchronized AliasNameResolver getInstance(Context ctx) {
+        if (sInstance == null) {
+            // The observer is registered for the life of the process
+            Context appContext = ctx.getApplicationContext();
+            sInstance = new AliasNameResolver((appContext != null ? appContext : ctx)
+                    .getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private AliasNameResolver(ContentResolver resolver) {
+        mResolver = resolver;
+        mResolver.registerContentObserver(MESSAGE_URI, true, mObserver);
+    }
+
+    /**
+     * Returns the alias name of a contact
+     *
+     * @param contact Contact
+     * @return Alias name or empty string if the contact has no alias
+     */
+    public String getAliasName(String contact) {
+        if (contact == null) {
+            return "";
+        }
+        synchronized (this) {
+            String alias = mAliases.get(contact);
+            if (alias != null) {
+                return alias;
+            }
+        }
+        List<String> contacts = new ArrayList<String>(1);
+        contacts.add(contact);
+        String alias = load(contacts).get(contact);
+        return (alias != null) ? alias : "";
+    }
+
+    /**
+     * Loads the alias names of the contacts which are not in the cache, for
+     * example the contacts shown in a chat list
+     *
+     * @param contacts Contacts
+     */
+    public void preload(Collection<String> contacts) {
+        List<String> missing = new ArrayList<String>();
+        synchronized (this) {
+            for (String contact : contacts) {
+                if (contact != null && !mAliases.containsKey(contact)) {
+                    missing.add(contact);
+                }
+            }
+        }
+        for (int i = 0; i < missing.size(); i += MAX_QUERY_CONTACTS) {
+            load(missing.subList(i, Math.min(i + MAX_QUERY_CONTACTS, missing.size())));
+        }
+    }
+
+    /**
+     * Updates the alias name of the sender of a new message before the
+     * message table notifies the change, may be called from the chat listeners
+     *
+     * @param message Chat message
+     */
+    public void onNewMessage(ChatMessage message) {
+        String contact = message.getContact();
+        String displayName = message.getDisplayName();
+        if (contact == null || displayName == null || displayName.length() == 0) {
+            return;
+        }
+        synchronized (this) {
+            mAliases.put(contact, displayName);
+        }
+    }
+
+    /**
+     * Drops the names affected by a change of the message table
+     *
+     * @param uri URI of the changed message, or of the table
+     */
+    private void invalidate(Uri uri) {
+        String contact = (uri != null) ? getContact(uri) : null;
+        if (contact == null) {
+            clear();
+            return;
+        }
+        synchronized (this) {
+            mAliases.remove(contact);
+            mGeneration++;
+        }
+    }
+
+    /**
+     * Returns the contact of a message
+     *
+     * @param uri URI of the message
+     * @return Contact or null if the URI doesn't name an existing message
+     */
+    private String getContact(Uri uri) {
+        long id;
+        try {
+            id = ContentUris.parseId(uri);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (id < 0) {
+            return null;
+        }
+        Cursor cursor = mResolver.query(MESSAGE_URI,
+                new String[] { ChatLog.Message.CONTACT_NUMBER },
+                ChatLog.Message.ID + "=?", new String[] { String.valueOf(id) }, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Clears the cache, for example after the chat history has been deleted
+     */
+    public synchronized void clear() {
+        mAliases.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Loads the last non empty display name of each contact in one query
+     *
+     * @return Alias per contact, empty if the query failed
+     */
+    private Map<String, String> load(List<String> contacts) {
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        StringBuilder selection = new StringBuilder(ChatLog.Message.CONTACT_NUMBER + " IN (");
+        for (int i = 0; i < contacts.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(") AND " + ChatLog.Message.DISPLAY_NAME + " <> ''");
+        Cursor cursor = mResolver.query(MESSAGE_URI,
+                new String[] {
+                    ChatLog.Message.CONTACT_NUMBER, ChatLog.Message.DISPLAY_NAME
+                },
+                selection.toString(), contacts.toArray(new String[contacts.size()]),
+                ChatLog.Message.TIMESTAMP + " DESC");
+        if (cursor == null) {
+            Logger.w(TAG, "load failed for %d contacts", contacts.size());
+            return Collections.<String, String>emptyMap();
+        }
+        Map<String, String> aliases = new HashMap<String, String>();
+        for (String contact : contacts) {
+            aliases.put(contact, "");
+        }
+        Set<String> remaining = new HashSet<String>(contacts);
+        try {
+            while (!remaining.isEmpty() && cursor.moveToNext()) {
+                String contact = cursor.getString(0);
+                if (remaining.remove(contact)) {
+                    aliases.put(contact, cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (generation != mGeneration) {
+                // The table has changed during the query, the names are read again on next use
+                return aliases;
+            }
+            for (Map.Entry<String, String> entry : aliases.entrySet()) {
+                // A name received meanwhile is more recent than the loaded one
+                if (!mAliases.containsKey(entry.getKey())) {
+                    mAliases.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return aliases;
+    }
+}
@@ -19,6 +19,7 @@ package org.gsma.joyn.chat;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 import org.gsma.joyn.JoynServiceException;
 
@@ -120,7 +121,7 @@ public class Chat {
      * @throws JoynServiceException
      */
     public String sendMessage(String message) throws JoynServiceException {
-        Logger.i(TAG, "ABC sendMessage entry " + message);
+        Logger.i(TAG, "sendMessage entry length " + (message != null ? message.length() : 0));
         try {
             return chatInf.sendMessage(message);
         } catch (Exception e) {
@@ -128,6 +129,43 @@ public class Chat {
         }
     }
 
+    /**
+     * Sends several text messages in a single call to the service. The
+     * messages are sent in the list order, and the returned IDs are in the
+     * same order so that delivery reports can be matched as they arrive.
+     * A service which doesn't support the batch call is used message by message.
+     *
+     * @param messages List of messages
+     * @return List of unique message IDs, an ID is null in case of error
+     * @throws JoynServiceException
+     */
+    public List<String> sendMessages(List<String> messages) throws JoynServiceException {
+        Logger.i(TAG, "sendMessages entry size " + messages.size());
+        if (messages.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        try {
+            List<String> ids = chatInf.sendMessages(messages);
+            if (ids != null && ids.size() == messages.size()) {
+                return ids;
+            }
+            // A service without batch support leaves the reply empty. A reply of
+            // another size covers the first messages only: the others are sent one
+            // by one, so that no message is sent twice.
+            int sent = (ids != null) ? Math.min(ids.size(), messages.size()) : 0;
+            List<String> result = new ArrayList<String>(messages.size());
+            for (int i = 0; i < sent; i++) {
+                result.add(ids.get(i));
+            }
+            for (int i = sent; i < messages.size(); i++) {
+                result.add(chatInf.sendMessage(messages.get(i)));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new JoynServiceException(e.getMessage());
+        }
+    }
+
     /**
      * Sends a geoloc message
      *
@@ -205,7 +243,7 @@ public class Chat {
      */
    public String sendMessageByPagerMode(String message) throws JoynServiceException {
 
-        Logger.i(TAG, "sendMessageByPagerMode entry " + message);
+        Logger.i(TAG, "sendMessageByPagerMode entry length " + (message != null ? message.length() : 0));
         try {
             return chatInf.sendMessageByPagerMode(message, false, false, false, false, null);
         } catch (Exception e) {
@@ -20,6 +20,8 @@ package org.gsma.joyn.chat;
 import java.io.ByteArrayInputStream;
 import java.io.ObjectInputStream;
 
+import android.content.ContentResolver;
+import android.database.Cursor;
 import android.net.Uri;
 
 /**
@@ -235,6 +237,95 @@ public class ChatLog {
          *@: ENDS
          */
 
+        /**
+         * Projection for message lists, without the message body
+         */
+        public static final String[] LIST_PROJECTION = {
+            ID, CHAT_ID, MESSAGE_ID, MESSAGE_STATUS, DIRECTION, MESSAGE_TYPE,
+            CONTACT_NUMBER, TIMESTAMP, MIME_TYPE
+        };
+
+        /**
+         * Projection for the messages of an opened conversation
+         */
+        public static final String[] CONVERSATION_PROJECTION = {
+            ID, CHAT_ID, MESSAGE_ID, MESSAGE_STATUS, DIRECTION, MESSAGE_TYPE,
+            CONTACT_NUMBER, BODY, TIMESTAMP, MIME_TYPE, DISPLAY_NAME
+        };
+
+        /**
+         * Name of the message table of the chat provider, used in sub-queries.
+         * This is an assumption: the provider contract only defines
+         * {@link #CONTENT_URI}, and the table is assumed to be named after its
+         * last path segment.
+         */
+        private static final String TABLE = "message";
+
+        /**
+         * Sort order of the pages, most recent first. The row ID breaks the ties
+         * between messages with the same timestamp.
+         */
+        private static final String PAGE_ORDER = TIMESTAMP + " DESC, " + ID + " DESC";
+
+        /**
+         * Returns a page of messages of a conversation, most recent first.
+         * The page is located from the last row of the previous page rather
+         * than with an offset, so that the cost of a page doesn't depend on
+         * the size of the history, provided that the provider indexes
+         * (chat_id, timestamp). That index is assumed, it is not part of the
+         * provider contract: without it each page scans the conversation.
+         * The selection bounds the timestamp with a top level range so that
+         * such an index is used for the seek.
+         *
+         * @param resolver Content resolver
+         * @param chatId Chat ID of the conversation
+         * @param projection Columns to return, e.g. {@link #CONVERSATION_PROJECTION}
+         * @param beforeTimestamp Timestamp of the last message of the previous page,
+         *     or -1 for the first page
+         * @param beforeId Row ID of the last message of the previous page, ignored
+         *     for the first page
+         * @param limit Maximum number of messages
+         * @return Cursor or null
+         */
+        public static Cursor queryPage(ContentResolver resolver, String chatId,
+                String[] projection, long beforeTimestamp, long beforeId, int limit) {
+            String selection;
+            String[] selectionArgs;
+            if (beforeTimestamp < 0) {
+                selection = CHAT_ID + "=?";
+                selectionArgs = new String[] { chatId };
+            } else {
+                selection = CHAT_ID + "=? AND " + TIMESTAMP + "<=? AND (" + TIMESTAMP
+                        + "<? OR " + ID + "<?)";
+                String timestamp = String.valueOf(beforeTimestamp);
+                selectionArgs = new String[] {
+                    chatId, timestamp, timestamp, String.valueOf(beforeId)
+                };
+            }
+            return resolver.query(CONTENT_URI, projection, selection, selectionArgs,
+                    PAGE_ORDER + " LIMIT " + limit);
+        }
+
+        /**
+         * Returns the last message of each conversation, most recent first,
+         * for a conversation list. It assumes that the provider indexes
+         * (chat_id, timestamp), so that each conversation costs one index lookup,
+         * and that its table is named "message"; neither is part of the
+         * provider contract. If the table name is wrong the query fails, if the
+         * index is missing each conversation costs a scan of its messages.
+         *
+         * @param resolver Content resolver
+         * @param projection Columns to return, e.g. {@link #LIST_PROJECTION}
+         * @return Cursor or null
+         */
+        public static Cursor queryConversationSummaries(ContentResolver resolver,
+                String[] projection) {
+            String selection = ID + " IN (SELECT m." + ID + " FROM " + TABLE + " m WHERE m."
+                    + CHAT_ID + "=" + TABLE + "." + CHAT_ID + " ORDER BY m." + TIMESTAMP
+                    + " DESC, m." + ID + " DESC LIMIT 1)";
+            return resolver.query(CONTENT_URI, projection, selection, null, PAGE_ORDER);
+        }
+
 
         /**
          * Type of the message
@@ -29,10 +29,8 @@ import org.gsma.joyn.JoynServiceListener;
 import org.gsma.joyn.JoynServiceNotAvailableException;
 import org.gsma.joyn.JoynServiceRegistrationListener;
 
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.ServiceConnection;
 import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
@@ -40,6 +38,7 @@ import android.os.RemoteException;
 import org.gsma.joyn.Logger;
 //import com.orangelabs.rcs.service.api.ChatServiceImpl;
 
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 
 /**
@@ -80,10 +79,7 @@ public class ChatService extends JoynService {
             throw new SecurityException(" Required permission RCS_USE_CHAT");
         }*/
         Logger.i(TAG, "connected() entry");
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        boolean connected = ctx.bindService(intent, apiConnection, 0);
+        boolean connected = CoreServiceConnection.getInstance(ctx).register(apiConnection);
         Logger.i(TAG, "connect() exit status" + connected);
     }
 
@@ -92,12 +88,8 @@ public class ChatService extends JoynService {
      */
     @Override
     public void disconnect() {
-        try {
-            Logger.i(TAG, "disconnect() entry");
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        Logger.i(TAG, "disconnect() entry");
+        CoreServiceConnection.getInstance(ctx).unregister(apiConnection);
     }
 
     /**
@@ -115,10 +107,9 @@ public class ChatService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            Logger.i(TAG, "onServiceConnected entry" + service);
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
+            Logger.i(TAG, "onServiceConnected entry");
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getChatServiceBinder();
@@ -132,7 +123,7 @@ public class ChatService extends JoynService {
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
+        public void onCoreServiceDisconnected() {
             setApi(null);
             Logger.i(TAG, "onServiceDisconnected entry");
             if (serviceListener != null) {
@@ -622,7 +613,7 @@ public class ChatService extends JoynService {
                     Chat chat = new Chat(IChat.Stub.asInterface(binder));
                     result.add(chat);
                 }
-                Logger.i(TAG, "getChats returning with  " + result);
+                Logger.i(TAG, "getChats returning %d chats", result.size());
                 return result;
             } catch (Exception e) {
                 throw new JoynServiceException(e.getMessage());
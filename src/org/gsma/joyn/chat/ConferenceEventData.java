@@ -96,6 +96,10 @@ public class ConferenceEventData implements Parcelable {
 
         if (source.dataAvail() > 0) {
             int size = source.readInt();
+            if (size < 0) {
+                // Null list written by an earlier build of this release
+                return;
+            }
             this.users = new ArrayList<ConferenceUser>(size);
             for (int i = 0; i < size; i++ ) {
                 ConferenceUser user = (ConferenceUser)source.readParcelable(null);
@@ -116,6 +120,11 @@ public class ConferenceEventData implements Parcelable {
             for (ConferenceUser user : users) {
                 dest.writeParcelable(user, 0);
             }
+        } else {
+            // Written as an empty list, so that the parcel stays aligned when this
+            // object is embedded in another one. A count of -1 would make the
+            // readers of older releases fail on new ArrayList(-1).
+            dest.writeInt(0);
         }
     }
 
@@ -415,7 +415,7 @@ public class GroupChat {
      * @throws JoynServiceException
      */
     public String sendMessage(String text) throws JoynServiceException {
-        Logger.i(TAG, "sendMessage() entry " + text);
+        Logger.i(TAG, "sendMessage() entry length " + (text != null ? text.length() : 0));
         try {
             return chatInf.sendMessage(text);
         } catch (Exception e) {
@@ -423,6 +423,43 @@ public class GroupChat {
         }
     }
 
+    /**
+     * Sends several text messages to the group in a single call to the service.
+     * The messages are sent in the list order, and the returned IDs are in the
+     * same order so that delivery reports can be matched as they arrive.
+     * A service which doesn't support the batch call is used message by message.
+     *
+     * @param messages List of messages
+     * @return List of unique message IDs, an ID is null in case of error
+     * @throws JoynServiceException
+     */
+    public List<String> sendMessages(List<String> messages) throws JoynServiceException {
+        Logger.i(TAG, "sendMessages entry size " + messages.size());
+        if (messages.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        try {
+            List<String> ids = chatInf.sendMessages(messages);
+            if (ids != null && ids.size() == messages.size()) {
+                return ids;
+            }
+            // A service without batch support leaves the reply empty. A reply of
+            // another size covers the first messages only: the others are sent one
+            // by one, so that no message is sent twice.
+            int sent = (ids != null) ? Math.min(ids.size(), messages.size()) : 0;
+            List<String> result = new ArrayList<String>(messages.size());
+            for (int i = 0; i < sent; i++) {
+                result.add(ids.get(i));
+            }
+            for (int i = sent; i < messages.size(); i++) {
+                result.add(chatInf.sendMessage(messages.get(i)));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new JoynServiceException(e.getMessage());
+        }
+    }
+
     /**
      * Sends a emoticons message to the group
      *
@@ -19,8 +19,11 @@
 package org.gsma.joyn.contacts;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,10 +33,7 @@ import org.gsma.joyn.JoynServiceException;
 import org.gsma.joyn.JoynServiceListener;
 import org.gsma.joyn.JoynServiceNotAvailableException;
 
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
 import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.net.Uri;
@@ -42,7 +42,9 @@ import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
 import android.provider.ContactsContract;
+import android.telephony.PhoneNumberUtils;
 
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 import org.gsma.joyn.Logger;
 
@@ -63,6 +65,30 @@ public class ContactsService extends JoynService {
     private IContactsService api = null;
     private Context mContext = null;
     public static final String TAG = "TAPI-ContactsService";
+
+    /**
+     * Size of the buffer used to copy vCards
+     */
+    private static final int VCARD_BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum number of contacts exported per opening of the multi vCard URI,
+     * so that the lookup keys in the URI stay within the binder limits
+     */
+    private static final int MULTI_VCARD_MAX_CONTACTS = 500;
+
+    /**
+     * Snapshot of the IM blocked contacts, normalized, null until loaded. It is
+     * replaced rather than modified, so that it can be read without locking.
+     */
+    private volatile Set<String> mImBlockedSnapshot = null;
+
+    /**
+     * Version of the blocked contacts, incremented on each change
+     */
+    private volatile long mBlockedVersion = 0;
+
+    private final Object mBlockedLock = new Object();
     /**
      * Constructor
      *
@@ -79,10 +105,7 @@ public class ContactsService extends JoynService {
      */
     public void connect() {
         Logger.i(TAG, "ContactsService connect() entry");
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        ctx.bindService(intent, apiConnection, 0);
+        CoreServiceConnection.getInstance(ctx).register(apiConnection);
     }
 
     /**
@@ -90,11 +113,7 @@ public class ContactsService extends JoynService {
      */
     public void disconnect() {
         Logger.i(TAG, "ContactsService disconnect() entry");
-        try {
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        CoreServiceConnection.getInstance(ctx).unregister(apiConnection);
     }
 
     /**
@@ -111,10 +130,9 @@ public class ContactsService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            Logger.i(TAG, "onServiceConnected entry " + className);
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
+            Logger.i(TAG, "onServiceConnected entry");
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getContactsServiceBinder();
@@ -127,9 +145,10 @@ public class ContactsService extends JoynService {
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
-            Logger.i(TAG, "onServiceDisconnected entry " + className);
+        public void onCoreServiceDisconnected() {
+            Logger.i(TAG, "onServiceDisconnected entry");
             setApi(null);
+            invalidateBlockedContacts();
             if (serviceListener != null) {
                 serviceListener.onServiceDisconnected(Error.CONNECTION_LOST);
             }
@@ -240,36 +259,136 @@ public class ContactsService extends JoynService {
     public String getVCard(Uri contactUri) throws JoynServiceException {
         Logger.i(TAG, "getVCard() entry ");
         String fileName = null;
+        byte[] buffer = new byte[VCARD_BUFFER_SIZE];
         Cursor cursor = mContext.getContentResolver().query(contactUri, null, null, null, null);
-        while (cursor.moveToNext()) {
-            String name = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
-            String lookupKey = cursor.getString(cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY));
-            Uri vCardUri = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_VCARD_URI, lookupKey);
-            Logger.i(TAG, "getVCard() uri= " + vCardUri);
-            AssetFileDescriptor fd;
-            try {
-                fd = mContext.getContentResolver().openAssetFileDescriptor(vCardUri, "r");
-                FileInputStream fis = fd.createInputStream();
-                byte[] buf = new byte[(int) fd.getDeclaredLength()];
-                fis.read(buf);
-                String Vcard = new String(buf);
-
+        try {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
                 fileName = Environment.getExternalStorageDirectory().toString() + File.separator + name + ".vcf";
                 Logger.i(TAG, "getVCard() filename= " + fileName);
-                File vCardFile = new File(fileName);
+                OutputStream out = null;
+                try {
+                    out = new FileOutputStream(fileName, false);
+                    String lookupKey = cursor.getString(
+                            cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY));
+                    copyVCard(Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_VCARD_URI,
+                            lookupKey), out, buffer);
+                } finally {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new JoynServiceException(e.getMessage());
+        } finally {
+            cursor.close();
+        }
+        return fileName;
+    }
+
+    /**
+     * Exports the vCards of contacts into a single .vcf file, one entry after
+     * the other. The vCards are read through the multi vCard URI of the address
+     * book, which returns the vCards of several contacts in one stream, and
+     * are streamed to the file, so the memory used doesn't depend on the size
+     * of the vCards.
+     *
+     * @param contactUri Contact URI in the native address book, e.g. ContactsContract.Contacts.CONTENT_URI
+     *            for the whole address book
+     * @param fileName Filename of the .vcf file, replaced if it exists
+     * @return Number of bytes written
+     * @throws JoynServiceException
+     */
+    public long exportVCards(Uri contactUri, String fileName) throws JoynServiceException {
+        Logger.i(TAG, "exportVCards() entry filename= " + fileName);
+        long length = 0;
+        int count = 0;
+        byte[] buffer = new byte[VCARD_BUFFER_SIZE];
+        Cursor cursor = mContext.getContentResolver().query(contactUri, null, null, null, null);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(fileName, false);
+            int column = cursor.getColumnIndex(ContactsContract.Contacts.LOOKUP_KEY);
+            StringBuilder lookupKeys = new StringBuilder();
+            int pending = 0;
+            while (cursor.moveToNext()) {
+                if (pending > 0) {
+                    lookupKeys.append(':');
+                }
+                lookupKeys.append(cursor.getString(column));
+                pending++;
+                count++;
+                if (pending == MULTI_VCARD_MAX_CONTACTS) {
+                    length += copyMultiVCard(lookupKeys.toString(), out, buffer);
+                    lookupKeys.setLength(0);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                length += copyMultiVCard(lookupKeys.toString(), out, buffer);
+            }
+        } catch (Exception e) {
+            throw new JoynServiceException(e.getMessage());
+        } finally {
+            cursor.close();
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+        Logger.i(TAG, "exportVCards() " + count + " vCards, " + length + " bytes");
+        return length;
+    }
 
-                if (vCardFile.exists())
-                    vCardFile.delete();
+    /**
+     * Copies the vCards of several contacts to a stream
+     *
+     * @param lookupKeys Lookup keys of the contacts, separated by ':'
+     * @param out Output stream
+     * @param buffer Copy buffer
+     * @return Number of bytes copied
+     * @throws IOException
+     */
+    private long copyMultiVCard(String lookupKeys, OutputStream out, byte[] buffer)
+            throws IOException {
+        return copyVCard(Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_MULTI_VCARD_URI,
+                Uri.encode(lookupKeys)), out, buffer);
+    }
 
-                FileOutputStream mFileOutputStream = new FileOutputStream(vCardFile, true);
-                mFileOutputStream.write(Vcard.toString().getBytes());
-                mFileOutputStream.close();
-            } catch (Exception e) {
-                throw new JoynServiceException(e.getMessage());
+    /**
+     * Copies the content of a vCard URI to a stream
+     *
+     * @param vCardUri vCard URI
+     * @param out Output stream
+     * @param buffer Copy buffer
+     * @return Number of bytes copied
+     * @throws IOException
+     */
+    private long copyVCard(Uri vCardUri, OutputStream out, byte[] buffer) throws IOException {
+        Logger.i(TAG, "copyVCard() uri= " + vCardUri);
+        AssetFileDescriptor fd = mContext.getContentResolver().openAssetFileDescriptor(vCardUri, "r");
+        InputStream in = null;
+        long length = 0;
+        try {
+            in = fd.createInputStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                length += read;
+            }
+        } finally {
+            // Closing the stream closes the descriptor
+            if (in != null) {
+                in.close();
+            } else {
+                fd.close();
             }
         }
-        cursor.close();
-        return fileName;
+        return length;
     }
 
     /**
@@ -308,6 +427,116 @@ public class ContactsService extends JoynService {
             throw new JoynServiceNotAvailableException();
         }
     }
+
+    /**
+     * Get whether the "IM" feature is blocked for the contact, from a snapshot of
+     * the IM blocked contacts kept in the process. The snapshot is loaded on first
+     * use and kept up to date by setImBlockedForContact(). Use
+     * refreshBlockedContacts() after a change made outside this process.
+     *
+     * @param contact
+     * @return flag indicating if IM sessions with the contact are blocked
+     * @throws JoynServiceException
+     */
+    public boolean isImBlockedForContactCached(String contact) throws JoynServiceException {
+        Set<String> snapshot = mImBlockedSnapshot;
+        if (snapshot == null) {
+            snapshot = refreshBlockedContacts();
+        }
+        return snapshot.contains(normalizeContact(contact));
+    }
+
+    /**
+     * Reloads the snapshot of the IM blocked contacts from the service
+     *
+     * @return Snapshot of the normalized IM blocked contacts
+     * @throws JoynServiceException
+     */
+    public Set<String> refreshBlockedContacts() throws JoynServiceException {
+        long version = mBlockedVersion;
+        List<String> contacts = getImBlockedContacts();
+        Set<String> snapshot = new HashSet<String>();
+        if (contacts != null) {
+            for (String contact : contacts) {
+                snapshot.add(normalizeContact(contact));
+            }
+        }
+        snapshot = Collections.unmodifiableSet(snapshot);
+        synchronized (mBlockedLock) {
+            // Don't keep a list loaded before a concurrent change, it's reloaded on next use
+            if (mBlockedVersion == version) {
+                mImBlockedSnapshot = snapshot;
+                mBlockedVersion++;
+            }
+        }
+        Logger.i(TAG, "refreshBlockedContacts size " + snapshot.size());
+        return snapshot;
+    }
+
+    /**
+     * Returns the version of the blocked contacts. It changes each time the IM or FT
+     * blocked contacts are changed through this service or reloaded, so callers can
+     * detect that a result they kept is stale.
+     *
+     * @return Version
+     */
+    public long getBlockedContactsVersion() {
+        return mBlockedVersion;
+    }
+
+    /**
+     * Updates the snapshot after a change of the IM blocked flag of a contact
+     */
+    private void updateImBlockedSnapshot(String contact, boolean flag) {
+        synchronized (mBlockedLock) {
+            Set<String> snapshot = mImBlockedSnapshot;
+            if (snapshot != null) {
+                Set<String> updated = new HashSet<String>(snapshot);
+                if (flag) {
+                    updated.add(normalizeContact(contact));
+                } else {
+                    updated.remove(normalizeContact(contact));
+                }
+                mImBlockedSnapshot = Collections.unmodifiableSet(updated);
+            }
+            mBlockedVersion++;
+        }
+    }
+
+    private void invalidateBlockedContacts() {
+        synchronized (mBlockedLock) {
+            mImBlockedSnapshot = null;
+            mBlockedVersion++;
+        }
+    }
+
+    /**
+     * Normalizes a contact so that the different formats of a number match:
+     * the URI scheme and domain are removed, and so are the separators.
+     *
+     * @param contact Contact in any supported format
+     * @return Normalized contact
+     */
+    private static String normalizeContact(String contact) {
+        if (contact == null) {
+            return null;
+        }
+        String number = contact.trim();
+        int index = number.indexOf(':');
+        if (index >= 0) {
+            number = number.substring(index + 1);
+        }
+        index = number.indexOf('@');
+        if (index >= 0) {
+            number = number.substring(0, index);
+        }
+        index = number.indexOf(';');
+        if (index >= 0) {
+            number = number.substring(0, index);
+        }
+        return PhoneNumberUtils.normalizeNumber(number);
+    }
+
     /**
      * Get the contacts that are "IM blocked"
      *
@@ -362,6 +591,7 @@ public class ContactsService extends JoynService {
         if (api != null) {
             try {
                 api.setImBlockedForContact(contact, flag);
+                updateImBlockedSnapshot(contact, flag);
             } catch (Exception e) {
                 throw new JoynServiceException(e.getMessage());
             }
@@ -381,6 +611,9 @@ public class ContactsService extends JoynService {
         if (api != null) {
             try {
                 api.setFtBlockedForContact(contact, flag);
+                synchronized (mBlockedLock) {
+                    mBlockedVersion++;
+                }
             } catch (Exception e) {
                 throw new JoynServiceException(e.getMessage());
             }
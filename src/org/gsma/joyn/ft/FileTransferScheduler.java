@@ -0,0 +1,568 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn.ft;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.gsma.joyn.Logger;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/**
+ * Scheduler sending a file to many contacts with a bounded number of
+ * simultaneous transfers. Pending transfers are started by priority, and
+ * transfers which are paused or have failed are resumed automatically
+ * from the point recorded in the file transfer log.
+ */
+public class FileTransferScheduler {
+    public static final String TAG = "TAPI-FileTransferScheduler";
+
+    /**
+     * Default maximum number of retries of a transfer
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Delay before the first retry in milliseconds, doubled on each retry
+     */
+    private static final long RETRY_DELAY = 2000;
+
+    /**
+     * Scheduler event listener. The callbacks are called on the scheduler thread.
+     * Progress is reported at most once per run of the scheduler thread, with
+     * the latest totals.
+     */
+    public static class Listener {
+        /**
+         * Callback called when a file has been transferred to the contact
+         *
+         * @param request Transfer request
+         */
+        public void onTransferCompleted(Request request) {
+            // default implementation
+        }
+
+        /**
+         * Callback called when a transfer has definitively failed
+         *
+         * @param request Transfer request
+         * @param error Error
+         * @see FileTransfer.Error
+         */
+        public void onTransferFailed(Request request, int error) {
+            // default implementation
+        }
+
+        /**
+         * Callback called when the transfers progress
+         *
+         * @param transferredSize Size transferred by all the transfers
+         * @param throughput Aggregate throughput in bytes per second
+         */
+        public void onProgress(long transferredSize, long throughput) {
+            // default implementation
+        }
+    }
+
+    /**
+     * Transfer of the file to a contact
+     */
+    public class Request implements Comparable<Request> {
+        private final String contact;
+
+        private final String filename;
+
+        private final String fileicon;
+
+        private final int priority;
+
+        private final long sequence;
+
+        private String transferId = null;
+
+        private int retries = 0;
+
+        private long transferredSize = 0;
+
+        private boolean finished = false;
+
+        private boolean retryPending = false;
+
+        /**
+         * Listener of the current attempt, replaced on each start or resume
+         */
+        private FileTransferListener listener = null;
+
+        /**
+         * Listener of one attempt. Events of an earlier attempt are ignored,
+         * so that a late event of a replaced transfer doesn't end the current one.
+         */
+        private class AttemptListener extends FileTransferListener {
+            private boolean isCurrent() {
+                synchronized (FileTransferScheduler.this) {
+                    return listener == this;
+                }
+            }
+
+            @Override
+            public void onTransferStarted() {
+                Logger.i(TAG, "onTransferStarted " + contact);
+            }
+
+            @Override
+            public void onTransferAborted() {
+                Logger.i(TAG, "onTransferAborted " + contact);
+                if (isCurrent()) {
+                    onRequestFailed(Request.this, FileTransfer.Error.TRANSFER_FAILED, false);
+                }
+            }
+
+            @Override
+            public void onTransferError(int error) {
+                Logger.i(TAG, "onTransferError " + contact + " error " + error);
+                if (isCurrent()) {
+                    onRequestFailed(Request.this, error,
+                            error == FileTransfer.Error.TRANSFER_FAILED);
+                }
+            }
+
+            @Override
+            public void onTransferProgress(long currentSize, long totalSize) {
+                if (isCurrent()) {
+                    onRequestProgress(Request.this, currentSize);
+                }
+            }
+
+            @Override
+            public void onFileTransferred(String filename) {
+                Logger.i(TAG, "onFileTransferred " + contact);
+                if (isCurrent()) {
+                    onRequestCompleted(Request.this);
+                }
+            }
+
+            @Override
+            public void onTransferPaused() {
+                Logger.i(TAG, "onTransferPaused " + contact);
+                if (isCurrent()) {
+                    onRequestFailed(Request.this, FileTransfer.Error.TRANSFER_FAILED, true);
+                }
+            }
+
+            @Override
+            public void onTransferResumed(String oldFTid, String newFTId) {
+                Logger.i(TAG, "onTransferResumed " + oldFTid + " -> " + newFTId);
+                synchronized (FileTransferScheduler.this) {
+                    if (listener == this) {
+                        transferId = newFTId;
+                    }
+                }
+            }
+        }
+
+        Request(String contact, String filename, String fileicon, int priority, long sequence) {
+            this.contact = contact;
+            this.filename = filename;
+            this.fileicon = fileicon;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Returns the contact
+         *
+         * @return Contact
+         */
+        public String getContact() {
+            return contact;
+        }
+
+        /**
+         * Returns the priority, the highest priority is started first
+         *
+         * @return Priority
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Returns the ID of the current file transfer
+         *
+         * @return Transfer ID or null if not started
+         */
+        public String getTransferId() {
+            synchronized (FileTransferScheduler.this) {
+                return transferId;
+            }
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return (priority > other.priority) ? -1 : 1;
+            }
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    private final Context context;
+
+    private final FileTransferService service;
+
+    private final int maxTransfers;
+
+    private final int maxRetries;
+
+    private final Listener listener;
+
+    private final HandlerThread thread;
+
+    private final Handler handler;
+
+    private final PriorityQueue<Request> pending = new PriorityQueue<Request>();
+
+    private final Set<Request> running = new HashSet<Request>();
+
+    private long sequence = 0;
+
+    private long transferredSize = 0;
+
+    private long startTime = 0;
+
+    private boolean progressPending = false;
+
+    /**
+     * Constructor
+     *
+     * @param context Application context
+     * @param service Connected file transfer service
+     * @param maxTransfers Maximum number of simultaneous transfers
+     * @param maxRetries Maximum number of retries of a transfer
+     * @param listener Scheduler event listener
+     */
+    public FileTransferScheduler(Context context, FileTransferService service,
+            int maxTransfers, int maxRetries, Listener listener) {
+        this.context = context;
+        this.service = service;
+        this.maxTransfers = Math.max(1, maxTransfers);
+        this.maxRetries = maxRetries;
+        this.listener = (listener != null) ? listener : new Listener();
+        this.thread = new HandlerThread(TAG);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Schedules the transfer of a file to contacts
+     *
+     * @param contacts Set of contacts
+     * @param filename Filename to transfer
+     * @param fileicon Filename of the file icon, may be null
+     * @param priority Priority of the transfers
+     * @return Set of transfer requests
+     */
+    public Set<Request> schedule(Set<String> contacts, String filename, String fileicon,
+            int priority) {
+        Set<Request> requests = new HashSet<Request>();
+        synchronized (this) {
+            for (String contact : contacts) {
+                Request request = new Request(contact, filename, fileicon, priority, sequence++);
+                pending.add(request);
+                requests.add(request);
+            }
+        }
+        Logger.i(TAG, "schedule " + requests.size() + " transfers of " + filename);
+        postStartPending();
+        return requests;
+    }
+
+    /**
+     * Cancels the pending transfers and aborts the running ones, then stops
+     * the scheduler thread
+     */
+    public void shutdown() {
+        Request[] requests;
+        synchronized (this) {
+            pending.clear();
+            requests = running.toArray(new Request[running.size()]);
+            running.clear();
+        }
+        for (Request request : requests) {
+            detach(request, true);
+        }
+        thread.quit();
+    }
+
+    /**
+     * Returns the size transferred by all the transfers
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getTransferredSize() {
+        return transferredSize;
+    }
+
+    /**
+     * Returns the aggregate throughput since the first transfer has started
+     *
+     * @return Throughput in bytes per second
+     */
+    public synchronized long getThroughput() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        return (elapsed > 0) ? (transferredSize * 1000 / elapsed) : 0;
+    }
+
+    private void postStartPending() {
+        handler.post(new Runnable() {
+            public void run() {
+                startPending();
+            }
+        });
+    }
+
+    /**
+     * Starts pending transfers while the maximum is not reached
+     */
+    private void startPending() {
+        while (true) {
+            Request request;
+            synchronized (this) {
+                if (running.size() >= maxTransfers || pending.isEmpty()) {
+                    return;
+                }
+                request = pending.poll();
+                running.add(request);
+                if (startTime == 0) {
+                    startTime = SystemClock.elapsedRealtime();
+                }
+            }
+            start(request);
+        }
+    }
+
+    /**
+     * Removes the listener of the current attempt from its transfer, so that
+     * the transfer no longer reports to the scheduler
+     *
+     * @param request Request
+     * @param abort True to abort the transfer too
+     */
+    private void detach(Request request, boolean abort) {
+        String id;
+        FileTransferListener attempt;
+        synchronized (this) {
+            id = request.transferId;
+            attempt = request.listener;
+            request.listener = null;
+        }
+        if (id == null || attempt == null) {
+            return;
+        }
+        try {
+            FileTransfer transfer = service.getFileTransfer(id);
+            if (transfer != null) {
+                transfer.removeEventListener(attempt);
+                if (abort) {
+                    transfer.abortTransfer();
+                }
+            }
+        } catch (Exception e) {
+            Logger.w(TAG, "detach failed for " + id + ": " + e);
+        }
+    }
+
+    /**
+     * Starts a new transfer of the file, the transfer of an earlier attempt is aborted
+     */
+    private void start(Request request) {
+        detach(request, true);
+        FileTransferListener attempt = request.new AttemptListener();
+        synchronized (this) {
+            request.listener = attempt;
+            // Started again from the beginning, the size sent before is sent again
+            transferredSize -= request.transferredSize;
+            request.transferredSize = 0;
+        }
+        try {
+            FileTransfer transfer = service.transferFile(request.contact, request.filename,
+                    request.fileicon, attempt);
+            if (transfer == null) {
+                finish(request, FileTransfer.Error.TRANSFER_FAILED);
+                return;
+            }
+            String id = transfer.getTransferId();
+            synchronized (this) {
+                request.transferId = id;
+            }
+            Logger.i(TAG, "start " + request.contact + " id " + id);
+        } catch (Exception e) {
+            Logger.w(TAG, "start failed " + request.contact + ": " + e);
+            finish(request, FileTransfer.Error.TRANSFER_FAILED);
+        }
+    }
+
+    /**
+     * Resumes a transfer from the point recorded in the file transfer log.
+     * A transfer without hash can't be resumed and is started again.
+     */
+    private void resume(Request request) {
+        String id = request.getTransferId();
+        long transferred = 0;
+        long size = 0;
+        String hash = null;
+        Cursor cursor = context.getContentResolver().query(FileTransferLog.CONTENT_URI,
+                new String[] {
+                    FileTransferLog.TRANSFERRED, FileTransferLog.FILESIZE, FileTransferLog.HASH
+                },
+                FileTransferLog.FT_ID + "=?", new String[] { id }, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    transferred = cursor.getLong(0);
+                    size = cursor.getLong(1);
+                    hash = cursor.getString(2);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        Logger.i(TAG, "resume " + id + " transferred " + transferred + "/" + size);
+
+        if (size > 0 && transferred >= size) {
+            finish(request, -1);
+            return;
+        }
+        if (hash == null || transferred == 0) {
+            start(request);
+            return;
+        }
+        // The paused transfer no longer reports, the resumed one reports to a new listener
+        detach(request, false);
+        FileTransferListener attempt = request.new AttemptListener();
+        synchronized (this) {
+            request.transferId = id;
+            request.listener = attempt;
+        }
+        try {
+            FileTransfer transfer = service.resumeFileTransfer(id, attempt);
+            if (transfer == null) {
+                start(request);
+            }
+        } catch (Exception e) {
+            Logger.w(TAG, "resume failed " + id + ": " + e);
+            start(request);
+        }
+    }
+
+    private void onRequestProgress(Request request, long currentSize) {
+        synchronized (this) {
+            if (currentSize > request.transferredSize) {
+                transferredSize += currentSize - request.transferredSize;
+            }
+            request.transferredSize = currentSize;
+            if (progressPending) {
+                return;
+            }
+            progressPending = true;
+        }
+        handler.post(new Runnable() {
+            public void run() {
+                long transferred;
+                synchronized (FileTransferScheduler.this) {
+                    progressPending = false;
+                    transferred = transferredSize;
+                }
+                listener.onProgress(transferred, getThroughput());
+            }
+        });
+    }
+
+    private void onRequestCompleted(final Request request) {
+        handler.post(new Runnable() {
+            public void run() {
+                finish(request, -1);
+            }
+        });
+    }
+
+    private void onRequestFailed(final Request request, final int error, boolean retry) {
+        synchronized (this) {
+            if (request.finished || !running.contains(request)) {
+                return;
+            }
+            if (retry && request.retryPending) {
+                // A pause and an error may both be notified for the same failure
+                return;
+            }
+            if (retry && request.retries < maxRetries) {
+                long delay = RETRY_DELAY << request.retries;
+                request.retries++;
+                request.retryPending = true;
+                Logger.i(TAG, "retry " + request.contact + " in " + delay + " ms");
+                handler.postDelayed(new Runnable() {
+                    public void run() {
+                        synchronized (FileTransferScheduler.this) {
+                            request.retryPending = false;
+                            if (request.finished) {
+                                return;
+                            }
+                        }
+                        resume(request);
+                    }
+                }, delay);
+                return;
+            }
+        }
+        handler.post(new Runnable() {
+            public void run() {
+                finish(request, error);
+            }
+        });
+    }
+
+    /**
+     * Ends a request and starts the next pending one
+     *
+     * @param request Request
+     * @param error Error, or -1 if the file has been transferred
+     */
+    private void finish(Request request, int error) {
+        synchronized (this) {
+            if (request.finished || !running.remove(request)) {
+                return;
+            }
+            request.finished = true;
+        }
+        if (error < 0) {
+            listener.onTransferCompleted(request);
+        } else {
+            listener.onTransferFailed(request, error);
+        }
+        startPending();
+    }
+}
@@ -28,16 +28,15 @@ import org.gsma.joyn.JoynServiceException;
 import org.gsma.joyn.JoynServiceListener;
 import org.gsma.joyn.JoynServiceNotAvailableException;
 
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.ServiceConnection;
 import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
 
 import org.gsma.joyn.Logger;
 
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 
 /**
@@ -58,6 +57,11 @@ public class FileTransferService extends JoynService {
 
     public static final String TAG = "TAPI-FileTransferService";
 
+    /**
+     * Files already uploaded by HTTP file transfers in the process
+     */
+    private static final FileTransferUploadCache sUploadCache = new FileTransferUploadCache();
+
     /**
      * Constructor
      *
@@ -73,24 +77,15 @@ public class FileTransferService extends JoynService {
      */
     public void connect() {
         Logger.i(TAG, "FileTransfer connected() entry");
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        intent.setAction(IFileTransferService.class.getName());
-
-        ctx.bindService(intent, apiConnection, 0);
+        CoreServiceConnection.getInstance(ctx, IFileTransferService.class.getName()).register(apiConnection);
     }
 
     /**
      * Disconnects from the API
      */
     public void disconnect() {
-        try {
-            Logger.i(TAG, "FileTransfer disconnect() entry");
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        Logger.i(TAG, "FileTransfer disconnect() entry");
+        CoreServiceConnection.getInstance(ctx, IFileTransferService.class.getName()).unregister(apiConnection);
     }
 
     /**
@@ -107,10 +102,9 @@ public class FileTransferService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            Logger.i(TAG, "onServiceConnected entry " + className);
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
+            Logger.i(TAG, "onServiceConnected entry");
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getFileTransferServiceBinder();
@@ -123,8 +117,8 @@ public class FileTransferService extends JoynService {
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
-            Logger.i(TAG, "onServiceDisconnected entry " + className);
+        public void onCoreServiceDisconnected() {
+            Logger.i(TAG, "onServiceDisconnected entry");
             setApi(null);
             if (serviceListener != null) {
                 serviceListener.onServiceDisconnected(JoynService.Error.CONNECTION_LOST);
@@ -190,7 +184,11 @@ public class FileTransferService extends JoynService {
         Logger.i(TAG, "transferFile() entry contact= " + contact + " filename=" + filename + " fileicon = " + fileicon + " listener=" + listener);
         if (api != null) {
             try {
-                IFileTransfer ftIntf = api.transferFile(contact, filename, fileicon, listener);
+                IFileTransfer ftIntf = transferByReference(filename, contact, fileicon, listener);
+                if (ftIntf == null) {
+                    ftIntf = api.transferFile(contact, filename, fileicon, listener);
+                    recordUpload(filename, ftIntf);
+                }
                 if (ftIntf != null) {
                     return new FileTransfer(ftIntf);
                 } else {
@@ -204,6 +202,85 @@ public class FileTransferService extends JoynService {
         }
     }
 
+    /**
+     * Transfers a file already uploaded by an HTTP file transfer by
+     * reference to that transfer, so that the content is not uploaded again
+     *
+     * @param filename Filename to transfer
+     * @return File transfer interface, or null if the file must be uploaded
+     */
+    private IFileTransfer transferByReference(String filename, String contact, String fileicon,
+            FileTransferListener listener) throws RemoteException {
+        String uploadId = sUploadCache.get(filename);
+        if (uploadId == null) {
+            return null;
+        }
+        // An older stack returns an empty reply, read as a null transfer
+        IFileTransfer ftIntf = api.transferFileByReference(contact, uploadId, fileicon,
+                listener, 0);
+        if (ftIntf == null) {
+            Logger.i(TAG, "transferByReference() upload " + uploadId + " not available");
+            sUploadCache.invalidate(uploadId);
+        } else {
+            Logger.i(TAG, "transferByReference() reuse upload " + uploadId);
+        }
+        return ftIntf;
+    }
+
+    /**
+     * Records the upload of a transfer once the file has been transferred
+     * over HTTP
+     *
+     * @param filename Filename transferred
+     * @param ftIntf File transfer interface
+     */
+    private void recordUpload(final String filename, final IFileTransfer ftIntf)
+            throws RemoteException {
+        if (filename == null || ftIntf == null) {
+            return;
+        }
+        ftIntf.addEventListener(new FileTransferListener() {
+            @Override
+            public void onTransferStarted() {
+            }
+
+            @Override
+            public void onTransferAborted() {
+                remove();
+            }
+
+            @Override
+            public void onTransferError(int error) {
+                remove();
+            }
+
+            @Override
+            public void onTransferProgress(long currentSize, long totalSize) {
+            }
+
+            @Override
+            public void onFileTransferred(String transferredFile) {
+                try {
+                    // Indexed by the path sent, which is the one looked up
+                    if (ftIntf.isHttpFileTransfer()) {
+                        sUploadCache.put(filename, ftIntf.getTransferId());
+                    }
+                } catch (RemoteException e) {
+                    // Nothing to do
+                }
+                remove();
+            }
+
+            private void remove() {
+                try {
+                    ftIntf.removeEventListener(this);
+                } catch (RemoteException e) {
+                    // Nothing to do
+                }
+            }
+        });
+    }
+
     /**
      * Resumes an interrupted file from the point it got interrupted. Only for MSRP FT
      *
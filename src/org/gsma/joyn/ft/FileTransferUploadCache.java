@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.gsma.joyn.ft;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gsma.joyn.Logger;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+/**
+ * In-process index of the files already uploaded by HTTP file transfers,
+ * keyed by the hash of the file content. A file sent again while its
+ * upload is still valid is transferred by reference to the earlier
+ * transfer instead of being uploaded again.
+ *
+ * The files are hashed on a worker thread only, the calling thread only
+ * reads the file attributes. The hash of a file is kept per path until the
+ * file is modified. A file whose hash is not known yet is uploaded, and
+ * hashed in the background so that it is found when it is sent again.
+ */
+class FileTransferUploadCache {
+    public static final String TAG = "TAPI-FileTransferUploadCache";
+
+    /**
+     * Default validity of an upload in milliseconds
+     */
+    static final long DEFAULT_EXPIRATION = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Default maximum number of uploads in the index
+     */
+    static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /**
+     * Size of the file window mapped at once when hashing
+     */
+    private static final long MAP_WINDOW = 8 * 1024 * 1024;
+
+    /**
+     * Maximum number of file hashes kept
+     */
+    private static final int MAX_HASHES = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Uploaded content
+     */
+    private static class Upload {
+        final String transferId;
+        final long timestamp;
+
+        Upload(String transferId, long timestamp) {
+            this.transferId = transferId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Content key of a file, valid while the file is not modified
+     */
+    private static class FileHash {
+        final long length;
+        final long lastModified;
+        final String key;
+
+        FileHash(long length, long lastModified, String key) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.key = key;
+        }
+    }
+
+    private final long mExpiration;
+
+    private final int mMaxEntries;
+
+    /**
+     * Uploads per content key, in least recently used order
+     */
+    private final LinkedHashMap<String, Upload> mUploads;
+
+    /**
+     * Content keys per file path, so that a file forwarded to several
+     * contacts is hashed once
+     */
+    private final LinkedHashMap<String, FileHash> mHashes =
+            new LinkedHashMap<String, FileHash>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileHash> eldest) {
+            return size() > MAX_HASHES;
+        }
+    };
+
+    /**
+     * Worker thread hashing the files, started on first use
+     */
+    private Handler mWorker = null;
+
+    FileTransferUploadCache() {
+        this(DEFAULT_EXPIRATION, DEFAULT_MAX_ENTRIES);
+    }
+
+    FileTransferUploadCache(long expiration, int maxEntries) {
+        mExpiration = expiration;
+        mMaxEntries = maxEntries;
+        mUploads = new LinkedHashMap<String, Upload>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Upload> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the transfer which has uploaded the content of a file. The file
+     * is not hashed on the calling thread: if its hash is not known yet, it
+     * is hashed on the worker thread and null is returned.
+     *
+     * @param filename Filename
+     * @return Transfer ID or null if the content has no known valid upload
+     */
+    String get(final String filename) {
+        if (filename == null) {
+            return null;
+        }
+        File file = new File(filename);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (length <= 0) {
+            return null;
+        }
+        synchronized (this) {
+            FileHash hash = mHashes.get(filename);
+            if (hash == null || hash.length != length || hash.lastModified != lastModified) {
+                post(new Runnable() {
+                    public void run() {
+                        getKey(filename);
+                    }
+                });
+                return null;
+            }
+            Upload upload = mUploads.get(hash.key);
+            if (upload == null) {
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() - upload.timestamp >= mExpiration) {
+                mUploads.remove(hash.key);
+                return null;
+            }
+            return upload.transferId;
+        }
+    }
+
+    /**
+     * Store the transfer which has uploaded a file. The content key is
+     * computed on the worker thread before the upload is indexed.
+     *
+     * @param filename Filename uploaded
+     * @param transferId Transfer ID
+     */
+    void put(final String filename, final String transferId) {
+        if (filename == null || transferId == null) {
+            return;
+        }
+        final long timestamp = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            post(new Runnable() {
+                public void run() {
+                    String key = getKey(filename);
+                    if (key == null) {
+                        return;
+                    }
+                    synchronized (FileTransferUploadCache.this) {
+                        mUploads.put(key, new Upload(transferId, timestamp));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove the upload of a transfer, when the upload is no longer
+     * available in the stack
+     *
+     * @param transferId Transfer ID
+     */
+    synchronized void invalidate(String transferId) {
+        Iterator<Upload> it = mUploads.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().transferId.equals(transferId)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void post(Runnable task) {
+        if (mWorker == null) {
+            HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            mWorker = new Handler(thread.getLooper());
+        }
+        mWorker.post(task);
+    }
+
+    /**
+     * Returns the content key of a file, made of the file size and of the
+     * SHA-1 of its content. Called on the worker thread only.
+     *
+     * @param filename Filename
+     * @return Key or null if the file can't be read
+     */
+    private String getKey(String filename) {
+        File file = new File(filename);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (length <= 0) {
+            return null;
+        }
+        synchronized (this) {
+            FileHash hash = mHashes.get(filename);
+            if (hash != null && hash.length == length && hash.lastModified == lastModified) {
+                return hash.key;
+            }
+        }
+        String key;
+        try {
+            key = length + ":" + hash(file);
+        } catch (IOException e) {
+            Logger.w(TAG, "getKey failed to hash " + filename + ": " + e);
+            return null;
+        }
+        synchronized (this) {
+            mHashes.put(filename, new FileHash(length, lastModified, key));
+        }
+        return key;
+    }
+
+    /**
+     * Hashes the file through windows mapped in memory, so that the file
+     * is not copied to the heap
+     */
+    private static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(MAP_WINDOW, size - position));
+                digest.update(buffer);
+            }
+        } finally {
+            in.close();
+        }
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 import org.gsma.joyn.JoynContactFormatException;
 import org.gsma.joyn.JoynService;
@@ -30,10 +31,8 @@ import org.gsma.joyn.JoynServiceNotAvailableException;
 import org.gsma.joyn.Permissions;
 import org.gsma.joyn.chat.Geoloc;
 
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.IBinder;
 import android.os.IInterface;
@@ -74,22 +73,15 @@ public class GeolocSharingService extends JoynService {
      */
     public void connect() {
         Logger.i(TAG, "GeolocSharing connect() entry");
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        ctx.bindService(intent, apiConnection, 0);
+        CoreServiceConnection.getInstance(ctx).register(apiConnection);
     }
 
     /**
      * Disconnects from the API
      */
     public void disconnect() {
-        try {
-            Logger.i(TAG, "disconnect() entry");
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        Logger.i(TAG, "disconnect() entry");
+        CoreServiceConnection.getInstance(ctx).unregister(apiConnection);
     }
 
     /**
@@ -106,10 +98,9 @@ public class GeolocSharingService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            Logger.i(TAG, "onServiceConnected entry " + className);
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
+            Logger.i(TAG, "onServiceConnected entry");
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getGeolocServiceBinder();
@@ -122,8 +113,8 @@ public class GeolocSharingService extends JoynService {
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
-            Logger.i(TAG, "onServiceDisconnected entry " + className);
+        public void onCoreServiceDisconnected() {
+            Logger.i(TAG, "onServiceDisconnected entry");
             setApi(null);
             if (serviceListener != null) {
                 serviceListener.onServiceDisconnected(JoynService.Error.CONNECTION_LOST);
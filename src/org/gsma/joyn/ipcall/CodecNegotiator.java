@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn.ipcall;
+
+import org.gsma.joyn.VideoCodecNegotiator;
+
+/**
+ * Codec negotiation of an IP call. The video codecs are negotiated as
+ * described in {@link VideoCodecNegotiator}. A negotiator should be kept for
+ * the lifetime of a call, so that a re-INVITE offering the same video codecs
+ * returns the previous result without negotiating again.
+ */
+public class CodecNegotiator extends VideoCodecNegotiator<VideoCodec> {
+    /**
+     * Constructor with the default preference order
+     */
+    public CodecNegotiator() {
+        this(DEFAULT_PREFERENCE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param preference Criteria by decreasing importance, see PREFER_* constants
+     */
+    public CodecNegotiator(int[] preference) {
+        super(preference);
+    }
+
+    /**
+     * Selects the best audio codec offered by the remote which is supported
+     * locally. Codecs are compatible when their encodings are equal and their
+     * sample rates are equal or unspecified. Pairs of equal rank are ordered
+     * by the local then by the remote order.
+     *
+     * @param local Codecs supported locally, in local order of preference
+     * @param remote Codecs offered by the remote
+     * @return Remote codec or null if no codec is compatible
+     */
+    public AudioCodec negotiate(AudioCodec[] local, AudioCodec[] remote) {
+        if (local == null || remote == null) {
+            return null;
+        }
+        boolean preferRate = prefers(PREFER_CLOCK_RATE);
+        String[] remoteEncodings = new String[remote.length];
+        int[] remoteRates = new int[remote.length];
+        for (int i = 0; i < remote.length; i++) {
+            remoteEncodings[i] = remote[i].getEncoding();
+            remoteRates[i] = remote[i].getSampleRate();
+        }
+        int best = -1;
+        int bestRate = 0;
+        for (AudioCodec codec : local) {
+            String encoding = codec.getEncoding();
+            int rate = codec.getSampleRate();
+            for (int i = 0; i < remote.length; i++) {
+                if (encoding == null || !encoding.equalsIgnoreCase(remoteEncodings[i])
+                        || !matches(rate, remoteRates[i])) {
+                    continue;
+                }
+                int negotiatedRate = (rate == 0) ? remoteRates[i] : rate;
+                if (best < 0 || (preferRate && negotiatedRate > bestRate)) {
+                    best = i;
+                    bestRate = negotiatedRate;
+                }
+            }
+            if (best >= 0 && !preferRate) {
+                break;
+            }
+        }
+        return (best >= 0) ? remote[best] : null;
+    }
+
+    @Override
+    protected String getEncoding(VideoCodec codec) {
+        return codec.getEncoding();
+    }
+
+    @Override
+    protected int getPayloadType(VideoCodec codec) {
+        return codec.getPayloadType();
+    }
+
+    @Override
+    protected int getClockRate(VideoCodec codec) {
+        return codec.getClockRate();
+    }
+
+    @Override
+    protected int getFrameRate(VideoCodec codec) {
+        return codec.getFrameRate();
+    }
+
+    @Override
+    protected int getBitRate(VideoCodec codec) {
+        return codec.getBitRate();
+    }
+
+    @Override
+    protected int getVideoWidth(VideoCodec codec) {
+        return codec.getVideoWidth();
+    }
+
+    @Override
+    protected int getVideoHeight(VideoCodec codec) {
+        return codec.getVideoHeight();
+    }
+
+    @Override
+    protected String getParameters(VideoCodec codec) {
+        return codec.getParameters();
+    }
+
+    @Override
+    protected String getProfileLevelId(VideoCodec codec) {
+        return codec.getProfileLevelId();
+    }
+}
@@ -28,12 +28,11 @@ import org.gsma.joyn.JoynServiceException;
 import org.gsma.joyn.JoynServiceListener;
 import org.gsma.joyn.JoynServiceNotAvailableException;
 
+import org.gsma.joyn.CoreServiceConnection;
 import org.gsma.joyn.ICoreServiceWrapper;
 
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.ServiceConnection;
 import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
@@ -66,21 +65,14 @@ public class MultimediaSessionService extends JoynService {
      * Connects to the API
      */
     public void connect() {
-        Intent intent = new Intent();
-        ComponentName cmp = new ComponentName("com.orangelabs.rcs", "com.orangelabs.rcs.service.RcsCoreService");
-        intent.setComponent(cmp);
-        ctx.bindService(intent, apiConnection, 0);
+        CoreServiceConnection.getInstance(ctx).register(apiConnection);
     }
 
     /**
      * Disconnects from the API
      */
     public void disconnect() {
-        try {
-            ctx.unbindService(apiConnection);
-        } catch (IllegalArgumentException e) {
-            // Nothing to do
-        }
+        CoreServiceConnection.getInstance(ctx).unregister(apiConnection);
     }
 
     /**
@@ -97,9 +89,8 @@ public class MultimediaSessionService extends JoynService {
     /**
      * Service connection
      */
-    private ServiceConnection apiConnection = new ServiceConnection() {
-        public void onServiceConnected(ComponentName className, IBinder service) {
-            ICoreServiceWrapper mCoreServiceWrapperBinder = ICoreServiceWrapper.Stub.asInterface(service);
+    private CoreServiceConnection.Client apiConnection = new CoreServiceConnection.Client() {
+        public void onCoreServiceConnected(ICoreServiceWrapper mCoreServiceWrapperBinder) {
             IBinder binder = null;
             try {
                 binder = mCoreServiceWrapperBinder.getMultimediaSessionServiceBinder();
@@ -112,7 +103,7 @@ public class MultimediaSessionService extends JoynService {
             }
         }
 
-        public void onServiceDisconnected(ComponentName className) {
+        public void onCoreServiceDisconnected() {
             setApi(null);
             if (serviceListener != null) {
                 serviceListener.onServiceDisconnected(JoynService.Error.CONNECTION_LOST);
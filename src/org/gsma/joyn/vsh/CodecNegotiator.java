@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Software Name : RCS IMS Stack
+ *
+ * Copyright (C) 2010 France Telecom S.A.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.gsma.joyn.vsh;
+
+import org.gsma.joyn.VideoCodecNegotiator;
+
+/**
+ * Video codec negotiation of a video sharing session, see
+ * {@link VideoCodecNegotiator}. A negotiator should be kept for the lifetime
+ * of a session, so that a re-INVITE offering the same codecs returns the
+ * previous result without negotiating again.
+ */
+public class CodecNegotiator extends VideoCodecNegotiator<VideoCodec> {
+    /**
+     * Constructor with the default preference order
+     */
+    public CodecNegotiator() {
+        this(DEFAULT_PREFERENCE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param preference Criteria by decreasing importance, see PREFER_* constants
+     */
+    public CodecNegotiator(int[] preference) {
+        super(preference);
+    }
+
+    @Override
+    protected String getEncoding(VideoCodec codec) {
+        return codec.getEncoding();
+    }
+
+    @Override
+    protected int getPayloadType(VideoCodec codec) {
+        return codec.getPayloadType();
+    }
+
+    @Override
+    protected int getClockRate(VideoCodec codec) {
+        return codec.getClockRate();
+    }
+
+    @Override
+    protected int getFrameRate(VideoCodec codec) {
+        return codec.getFrameRate();
+    }
+
+    @Override
+    protected int getBitRate(VideoCodec codec) {
+        return codec.getBitRate();
+    }
+
+    @Override
+    protected int getVideoWidth(VideoCodec codec) {
+        return codec.getVideoWidth();
+    }
+
+    @Override
+    protected int getVideoHeight(VideoCodec codec) {
+        return codec.getVideoHeight();
+    }
+
+    @Override
+    protected String getParameters(VideoCodec codec) {
+        return codec.getParameters();
+    }
+
+    @Override
+    protected String getProfileLevelId(VideoCodec codec) {
+        return codec.getProfileLevelId();
+    }
+}
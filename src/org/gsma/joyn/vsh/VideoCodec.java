@@ -23,6 +23,7 @@ import java.util.Arrays;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import org.gsma.joyn.FmtpParameters;
 import org.gsma.joyn.H264Config;
 
 /**
@@ -71,6 +72,16 @@ public class VideoCodec implements Parcelable {
      */
     private String parameters;
 
+    /**
+     * H264 profile level ID and packetization mode, parsed once from the
+     * parameters on first use
+     */
+    private boolean parsed = false;
+
+    private String profileLevelId;
+
+    private int packetizationMode;
+
     /**
      * Constructor
      *
@@ -250,6 +261,35 @@ public class VideoCodec implements Parcelable {
         return value;
     }
 
+    /**
+     * Returns the H264 profile level ID parameter
+     *
+     * @return Profile level ID or null if not present
+     */
+    public String getProfileLevelId() {
+        parseParameters();
+        return profileLevelId;
+    }
+
+    /**
+     * Returns the H264 packetization mode parameter
+     *
+     * @return Packetization mode, 0 if not present
+     */
+    public int getPacketizationMode() {
+        parseParameters();
+        return packetizationMode;
+    }
+
+    private synchronized void parseParameters() {
+        if (!parsed) {
+            FmtpParameters params = FmtpParameters.parse(parameters);
+            profileLevelId = params.get(H264Config.CODEC_PARAM_PROFILEID);
+            packetizationMode = params.getInt(H264Config.CODEC_PARAM_PACKETIZATIONMODE, 0);
+            parsed = true;
+        }
+    }
+
     /**
      * Compare codec
      *
@@ -262,7 +302,9 @@ public class VideoCodec implements Parcelable {
                 && (getVideoWidth() == codec.getVideoWidth() || getVideoWidth() == 0 || codec.getVideoWidth() == 0)
                 && (getVideoHeight() == codec.getVideoHeight() || getVideoHeight() == 0 || codec.getVideoHeight() == 0)) {
             if (getEncoding().equalsIgnoreCase(H264Config.CODEC_NAME)) {
-                if (H264Config.getCodecProfileLevelId(getParameters()).compareToIgnoreCase(H264Config.getCodecProfileLevelId(codec.getParameters())) == 0) {
+                String localId = getProfileLevelId();
+                String remoteId = codec.getProfileLevelId();
+                if ((localId == null) ? (remoteId == null) : localId.equalsIgnoreCase(remoteId)) {
                     ret =  true;
                 }
             } else {